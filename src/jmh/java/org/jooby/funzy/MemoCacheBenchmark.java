@@ -0,0 +1,51 @@
+package org.jooby.funzy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hits on a few hot keys from several threads, with and without the thread local front cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MemoCacheBenchmark {
+
+  private Throwing.Function<String, String> shared;
+
+  private Throwing.Function<String, String> threadLocal;
+
+  private String key = "hot";
+
+  @Setup
+  public void setup() {
+    Throwing.Function<String, String> fn = v -> v + "!";
+    shared = fn.memoized(MemoCache.builder().maximumSize(1000).build());
+    threadLocal = fn.memoized(MemoCache.builder().maximumSize(1000).threadLocalCache(16).build());
+  }
+
+  @Benchmark
+  public String shared() {
+    return shared.apply(key);
+  }
+
+  @Benchmark
+  public String threadLocal() {
+    return threadLocal.apply(key);
+  }
+}
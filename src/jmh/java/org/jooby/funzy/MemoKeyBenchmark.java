@@ -0,0 +1,109 @@
+package org.jooby.funzy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a memoized hit on three and four argument functions and on int keyed functions. Run
+ * with <code>-prof gc</code> and compare <code>gc.alloc.rate.norm</code> against the list based
+ * keys used before and against boxed keys. <code>function3By</code> is a hit on a function
+ * memoized by a derived key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoKeyBenchmark {
+
+  private Throwing.Function3<String, Integer, Long, String> fn3;
+
+  private Throwing.Function4<String, Integer, Long, Boolean, String> fn4;
+
+  private Throwing.Function3<String, Integer, Long, String> fn3By;
+
+  private ConcurrentMap<List<Object>, String> listCache;
+
+  private Throwing.IntFunction<String> intFn;
+
+  private Throwing.Function<Integer, String> boxedFn;
+
+  /** Outside of the Integer cache, so boxing allocates. */
+  private int id = 4242;
+
+  private String s = "key";
+
+  private Integer i = 42;
+
+  private Long l = 7L;
+
+  private Boolean b = Boolean.TRUE;
+
+  @Setup
+  public void setup() {
+    fn3 = Throwing.<String, Integer, Long, String>throwingFunction((v1, v2, v3) -> v1 + v2 + v3)
+        .memoized();
+    fn4 = Throwing.<String, Integer, Long, Boolean, String>throwingFunction(
+        (v1, v2, v3, v4) -> v1 + v2 + v3 + v4).memoized();
+    listCache = new ConcurrentHashMap<>();
+
+    fn3By = Throwing.<String, Integer, Long, String>throwingFunction((v1, v2, v3) -> v1 + v2 + v3)
+        .memoizedBy((v1, v2, v3) -> v1);
+
+    fn3.apply(s, i, l);
+    fn3By.apply(s, i, l);
+    fn4.apply(s, i, l, b);
+    listCache.put(Arrays.asList(s, i, l), s + i + l);
+    intFn = Throwing.<String>throwingIntFunction(v -> "v" + v).memoized();
+    boxedFn = Throwing.<Integer, String>throwingFunction(v -> "v" + v).memoized();
+
+    intFn.apply(id);
+    boxedFn.apply(id);
+  }
+
+  @Benchmark
+  public String function3() {
+    return fn3.apply(s, i, l);
+  }
+
+  @Benchmark
+  public String function3By() {
+    return fn3By.apply(s, i, l);
+  }
+
+  @Benchmark
+  public String function4() {
+    return fn4.apply(s, i, l, b);
+  }
+
+  @Benchmark
+  public String intFunction() {
+    return intFn.apply(id);
+  }
+
+  @Benchmark
+  public String boxedFunction() {
+    return boxedFn.apply(id);
+  }
+
+  /** Baseline: the former key scheme, varargs array plus list wrapper per lookup. */
+  @Benchmark
+  public String listKey3() {
+    return listCache.get(Arrays.asList(s, i, l));
+  }
+}
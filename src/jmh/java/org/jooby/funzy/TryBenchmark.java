@@ -0,0 +1,91 @@
+package org.jooby.funzy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A typical map/recover chain on success and on failure. Run with <code>-prof gc</code>: values
+ * stay inside the Integer cache and the failure is preallocated, so
+ * <code>gc.alloc.rate.norm</code> is the cost of the Try instances themselves.
+ *
+ * The <code>new*</code> benchmarks compare a failure with a new exception, with a new
+ * {@link Try.Failed} and with a preallocated one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TryBenchmark {
+
+  private final IllegalStateException error = new IllegalStateException("intentional err");
+
+  private final Throwing.Supplier<String> ok = () -> "funzy";
+
+  private final Throwing.Supplier<String> ko = () -> {
+    throw error;
+  };
+
+  private final Throwing.Runnable noop = () -> {
+  };
+
+  private final Try.Failed failed = new Try.Failed("bad-input", "intentional err");
+
+  @Benchmark
+  public Integer success() {
+    return chain(ok);
+  }
+
+  @Benchmark
+  public Integer failure() {
+    return chain(ko);
+  }
+
+  @Benchmark
+  public boolean run() {
+    return Try.run(noop)
+        .onFailure(Throwable::printStackTrace)
+        .isSuccess();
+  }
+
+  private static Integer chain(Throwing.Supplier<String> source) {
+    return Try.apply(source)
+        .map(String::length)
+        .map(n -> n + 1)
+        .recover(IllegalStateException.class, 0)
+        .map(n -> n * 2)
+        .unwrap(IllegalArgumentException.class)
+        .orElse(-1);
+  }
+
+  @Benchmark
+  public boolean newException() {
+    return Try.apply(() -> {
+      throw new IllegalArgumentException("intentional err");
+    }).isFailure();
+  }
+
+  @Benchmark
+  public boolean newFailed() {
+    return Try.apply(() -> {
+      throw new Try.Failed("bad-input", "intentional err");
+    }).isFailure();
+  }
+
+  @Benchmark
+  public boolean preallocatedFailed() {
+    return Try.apply(() -> {
+      throw failed;
+    }).isFailure();
+  }
+}
@@ -0,0 +1,157 @@
+package org.jooby.funzy;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Unbounded cache keyed by <code>int</code> or <code>long</code>, behind
+ * {@link Throwing.IntFunction#memoized()} and {@link Throwing.LongFunction#memoized()}.
+ *
+ * Keys live in a primitive open addressing table with linear probing, so a hit via
+ * {@link #getIfPresent(long)} doesn't box the key nor allocate. Reads are lock-free: a writer
+ * stores the key first and then publishes the value with a volatile write, a reader that sees the
+ * value sees the key too. Writes take a short lock; a full table is copied into a bigger one and
+ * published as a whole, readers of the old table keep getting consistent answers.
+ *
+ * @param <V> Value type.
+ */
+@SuppressWarnings("unchecked")
+final class LongMemoCache<V> extends MemoCache<Long, V> {
+
+  private static final class Table {
+    final long[] keys;
+
+    /** Values, a null value marks a free slot. */
+    final AtomicReferenceArray<Object> values;
+
+    final int shift;
+
+    /** Number of entries, written while holding the lock. */
+    volatile int size;
+
+    Table(int capacity) {
+      this.keys = new long[capacity];
+      this.values = new AtomicReferenceArray<>(capacity);
+      this.shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /** Fibonacci hashing, spreads sequential ids across the table. */
+    int index(long key) {
+      return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /** Slot of the given key or of the free slot where it belongs. */
+    int slot(long key) {
+      int mask = keys.length - 1;
+      int i = index(key);
+      while (values.get(i) != null && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private volatile Table table = new Table(INITIAL_CAPACITY);
+
+  /**
+   * Get a cached value or null, without boxing the key.
+   *
+   * @param key Key.
+   * @return Cached value or null.
+   */
+  V getIfPresent(long key) {
+    Table table = this.table;
+    return (V) table.values.get(table.slot(key));
+  }
+
+  @Override protected V getIfPresent(Long key) {
+    return getIfPresent(key.longValue());
+  }
+
+  @Override protected V putIfAbsent(Long key, V value) {
+    long k = key;
+    lock.lock();
+    try {
+      Table table = this.table;
+      int i = table.slot(k);
+      Object existing = table.values.get(i);
+      if (existing != null) {
+        return (V) existing;
+      }
+      // keep load factor under 1/2, probes stay short and there is always a free slot
+      if ((table.size + 1) * 2 > table.keys.length) {
+        table = copy(table, table.keys.length * 2, k);
+        i = table.slot(k);
+        this.table = store(table, i, k, value);
+      } else {
+        store(table, i, k, value);
+      }
+      return null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override public void invalidate(Long key) {
+    long k = key;
+    lock.lock();
+    try {
+      Table table = this.table;
+      if (table.values.get(table.slot(k)) != null) {
+        // no tombstones: copy the remaining entries, probe chains stay intact
+        this.table = copy(table, table.keys.length, k);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override public void invalidateAll() {
+    lock.lock();
+    try {
+      table = new Table(INITIAL_CAPACITY);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override public long size() {
+    return table.size;
+  }
+
+  @Override protected void forEach(Throwing.Consumer2<Long, V> action) {
+    Table table = this.table;
+    for (int i = 0; i < table.keys.length; i++) {
+      Object value = table.values.get(i);
+      if (value != null) {
+        action.accept(table.keys[i], (V) value);
+      }
+    }
+  }
+
+  private static Table store(Table table, int i, long key, Object value) {
+    table.keys[i] = key;
+    table.values.set(i, value);
+    table.size += 1;
+    return table;
+  }
+
+  /**
+   * Copy entries into a new table, except the given key. Called while holding the lock.
+   */
+  private static Table copy(Table table, int capacity, long except) {
+    Table copy = new Table(capacity);
+    for (int i = 0; i < table.keys.length; i++) {
+      Object value = table.values.get(i);
+      long key = table.keys[i];
+      if (value != null && key != except) {
+        store(copy, copy.slot(key), key, value);
+      }
+    }
+    return copy;
+  }
+}
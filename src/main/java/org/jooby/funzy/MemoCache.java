@@ -0,0 +1,1581 @@
+package org.jooby.funzy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongBiFunction;
+import java.util.stream.LongStream;
+
+/**
+ * Storage behind memoized functions. Hits never take a lock, the user function never runs while
+ * a lock is held and runs once per key even when concurrent callers miss at the same time.
+ * Callers waiting for a concurrent load park on a {@link CompletableFuture} and no monitor is
+ * ever held, so virtual threads unmount from their carrier while a slow function runs.
+ *
+ * A cache is created with a {@link Builder} and given to a memoized function:
+ *
+ * <pre>{@code
+ *
+ *  Throwing.Function<String, Config> loader = this::loadConfig;
+ *
+ *  Throwing.Function<String, Config> config = loader.memoized(MemoCache.builder()
+ *      .maximumSize(1000)
+ *      .expireAfterWrite(Duration.ofMinutes(10))
+ *      .refreshAfterWrite(Duration.ofMinutes(1))
+ *      .build());
+ *
+ * }</pre>
+ *
+ * A cache instance must be owned by a single memoized function.
+ *
+ * <h2>Custom storage</h2>
+ *
+ * Other storages plug in by extending this class and implementing {@link #getIfPresent},
+ * {@link #putIfAbsent}, {@link #invalidate(Object)}, {@link #invalidateAll()} and
+ * {@link #size()}. Implementations must be thread-safe. Single-flight loading stays in this
+ * class: storage methods are never called while the user function runs and never need to
+ * block. Negative caching, cost aware eviction and snapshots are optional, see
+ * {@link #putNull}, {@link #putFailure}, {@link #costAware()} and {@link #forEach}.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+public abstract class MemoCache<K, V> {
+
+  /**
+   * Build a new {@link MemoCache}.
+   */
+  public static final class Builder {
+    private int maximumSize = -1;
+
+    private long maximumWeight = -1;
+
+    private ToLongBiFunction<Object, Object> weigher;
+
+    private long expireAfterWrite = -1;
+
+    private long expireAfterAccess = -1;
+
+    private long refreshAfterWrite = -1;
+
+    private long nullTtl = -1;
+
+    private long failureTtl = -1;
+
+    private boolean recordStats;
+
+    private boolean weakKeys;
+
+    private boolean softValues;
+
+    private int threadLocalSize = -1;
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    private LongSupplier ticker = System::nanoTime;
+
+    private Builder() {
+    }
+
+    /**
+     * Keep at most <code>maximumSize</code> entries. Least recently used entries are evicted first.
+     *
+     * @param maximumSize Max number of entries.
+     * @return This builder.
+     */
+    public Builder maximumSize(int maximumSize) {
+      if (maximumSize <= 0) {
+        throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+      }
+      this.maximumSize = maximumSize;
+      return this;
+    }
+
+    /**
+     * Keep entries up to the given total weight, as computed by the {@link #weigher}. Eviction is
+     * cost aware (GreedyDual): an entry is worth the time it took to compute per unit of weight,
+     * cheap and heavy entries go first, expensive and light entries stay. Entries not read for a
+     * while lose their worth over time, like in LRU.
+     *
+     * Can't be combined with {@link #maximumSize(int)}.
+     *
+     * @param maximumWeight Max total weight.
+     * @return This builder.
+     */
+    public Builder maximumWeight(long maximumWeight) {
+      if (maximumWeight <= 0) {
+        throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+      }
+      this.maximumWeight = maximumWeight;
+      return this;
+    }
+
+    /**
+     * Weight of entries, for {@link #maximumWeight(long)}. Usually the approximate size of the
+     * value in bytes. Cached nulls and failures weight <code>1</code>.
+     *
+     * <pre>{@code
+     *
+     *  MemoCache.builder()
+     *      .maximumWeight(64 * 1024 * 1024)
+     *      .weigher((Object key, byte[] value) -> value.length)
+     *      .build();
+     * }</pre>
+     *
+     * @param weigher Entry weigher, must return zero or a positive weight.
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @return This builder.
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Builder weigher(ToLongBiFunction<K, V> weigher) {
+      this.weigher = (ToLongBiFunction<Object, Object>) Objects
+          .requireNonNull(weigher, "Weigher required.");
+      return this;
+    }
+
+    /**
+     * Expire entries once the given duration has elapsed since they were computed.
+     *
+     * @param duration Time to live.
+     * @return This builder.
+     */
+    public Builder expireAfterWrite(Duration duration) {
+      this.expireAfterWrite = nanos("Expire after write", duration);
+      return this;
+    }
+
+    /**
+     * Expire entries once the given duration has elapsed since they were last read or computed.
+     *
+     * @param duration Time to idle.
+     * @return This builder.
+     */
+    public Builder expireAfterAccess(Duration duration) {
+      this.expireAfterAccess = nanos("Expire after access", duration);
+      return this;
+    }
+
+    /**
+     * Refresh-ahead: once the given duration has elapsed since an entry was computed, the next
+     * read triggers a single background reload on the {@link #executor(Executor)}. The stale value
+     * is served until the reload completes, so callers never block on a refresh. A failed reload
+     * keeps the stale value and is retried on a later read.
+     *
+     * @param duration Time before an entry is reloaded.
+     * @return This builder.
+     */
+    public Builder refreshAfterWrite(Duration duration) {
+      this.refreshAfterWrite = nanos("Refresh after write", duration);
+      return this;
+    }
+
+    /**
+     * Cache null results for the given duration. By default null results are not cached and the
+     * function runs again on the next call.
+     *
+     * @param ttl Time to live of null results.
+     * @return This builder.
+     */
+    public Builder cacheNulls(Duration ttl) {
+      this.nullTtl = nanos("Null time to live", ttl);
+      return this;
+    }
+
+    /**
+     * Cache failures for the given duration: calls within that period rethrow the cached exception
+     * without running the function. By default failures are not cached. Fatal exceptions, see
+     * {@link Throwing#isFatal(Throwable)}, are never cached.
+     *
+     * @param ttl Time to live of failures.
+     * @return This builder.
+     */
+    public Builder cacheFailures(Duration ttl) {
+      this.failureTtl = nanos("Failure time to live", ttl);
+      return this;
+    }
+
+    /**
+     * Record hits, misses, loads and evictions, see {@link MemoCache#stats()}.
+     *
+     * @return This builder.
+     */
+    public Builder recordStats() {
+      this.recordStats = true;
+      return this;
+    }
+
+    /**
+     * Hold keys with weak references: an entry is discarded once its key is garbage collected.
+     * Keys are still compared with <code>equals</code>. Each argument of a multi argument function
+     * is referenced on its own, the entry goes away as soon as one of them is collected.
+     *
+     * Meant for keys with a lifecycle of their own, like {@link Class}, {@link ClassLoader} or
+     * {@link java.lang.reflect.Method}, so the cache doesn't pin the classes of a redeployed
+     * application. Keys only referenced by the cache, like boxed numbers or computed strings, are
+     * collected at the next GC.
+     *
+     * @return This builder.
+     */
+    public Builder weakKeys() {
+      this.weakKeys = true;
+      return this;
+    }
+
+    /**
+     * Hold values with soft references: the garbage collector discards them under memory pressure
+     * and the function runs again on the next call. Cached nulls and failures are held strongly.
+     *
+     * @return This builder.
+     */
+    public Builder softValues() {
+      this.softValues = true;
+      return this;
+    }
+
+    /**
+     * Put a small per-thread cache in front of the shared one. A thread reads its hottest keys
+     * from its own table, without touching shared memory other than the entry itself. Entries
+     * are checked on every read, so invalidation, replacement and expiration of the shared entry
+     * are seen right away.
+     *
+     * Each thread keeps up to <code>size</code> entries (rounded up to a power of two) alive;
+     * meant for a bounded pool of threads reading few very hot keys. Virtual threads skip it and
+     * read the shared cache. Can't be combined with {@link #weakKeys()}.
+     *
+     * @param size Entries per thread.
+     * @return This builder.
+     */
+    public Builder threadLocalCache(int size) {
+      if (size <= 0) {
+        throw new IllegalArgumentException("Thread local cache size must be positive: " + size);
+      }
+      this.threadLocalSize = size;
+      return this;
+    }
+
+    /**
+     * Executor for background refresh. Defaults to {@link ForkJoinPool#commonPool()}.
+     *
+     * @param executor Executor.
+     * @return This builder.
+     */
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor, "Executor required.");
+      return this;
+    }
+
+    /**
+     * Time source in nanoseconds, for testing.
+     *
+     * @param ticker Time source.
+     * @return This builder.
+     */
+    Builder ticker(LongSupplier ticker) {
+      this.ticker = Objects.requireNonNull(ticker, "Ticker required.");
+      return this;
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param <K> Key type.
+     * @param <V> Value type.
+     * @return A new cache.
+     */
+    public <K, V> MemoCache<K, V> build() {
+      if (maximumWeight > 0 && weigher == null) {
+        throw new IllegalStateException("Maximum weight requires a weigher");
+      }
+      if (weigher != null && maximumWeight <= 0) {
+        throw new IllegalStateException("Weigher requires a maximum weight");
+      }
+      if (maximumWeight > 0 && maximumSize > 0) {
+        throw new IllegalStateException("Maximum size and maximum weight can't be combined");
+      }
+      if (weakKeys && threadLocalSize > 0) {
+        throw new IllegalStateException("Weak keys and thread local cache can't be combined");
+      }
+      return new Standard<>(this);
+    }
+
+    private static long nanos(String name, Duration duration) {
+      if (duration.isNegative() || duration.isZero()) {
+        throw new IllegalArgumentException(name + " must be positive: " + duration);
+      }
+      return duration.toNanos();
+    }
+  }
+
+  /**
+   * Node based cache with optional size bound, expiration, refresh and negative caching.
+   *
+   * The size bound uses the CLOCK (second chance) policy, an approximation of LRU. A hit only
+   * sets the reference bit of the entry, so reads stay lock-free. Inserts take a short lock to
+   * move the clock hand: entries referenced since the last sweep get a second chance, the first
+   * unreferenced entry is evicted.
+   *
+   * The weight bound uses sampled GreedyDual. Every entry has a priority: the inflation value
+   * <code>L</code> plus the time it took to compute per unit of weight. Inserts over the bound
+   * evict the lowest priority entry out of a few random samples and raise <code>L</code> to its
+   * priority. A hit resets the priority to the current <code>L</code> plus cost, so entries that
+   * aren't read fall behind as <code>L</code> grows.
+   *
+   * Weak keys and soft values are enqueued by the garbage collector once cleared. The queue is
+   * drained on writes and misses, so collected entries go away without a cleanup thread and hits
+   * never pay for it.
+   */
+  @SuppressWarnings("unchecked")
+  private static final class Standard<K, V> extends MemoCache<K, V> {
+
+    /** Cached failure. */
+    private static final class Failure {
+      final Throwable cause;
+
+      Failure(Throwable cause) {
+        this.cause = cause;
+      }
+    }
+
+    /** Cached null result. */
+    private static final Object NULL = new Object();
+
+    /**
+     * Weakly referenced key. Compared with equals while referents are alive, only equal to itself
+     * once an argument was collected.
+     */
+    private static final class WeakKey {
+      final int hash;
+      /** One reference per argument, null for null arguments. */
+      final Part[] parts;
+      final boolean composite;
+
+      WeakKey(Object key, ReferenceQueue<Object> queue) {
+        this.hash = key.hashCode();
+        this.composite = key instanceof MemoKey;
+        if (composite) {
+          MemoKey args = (MemoKey) key;
+          this.parts = new Part[args.size()];
+          for (int i = 0; i < parts.length; i++) {
+            Object arg = args.get(i);
+            parts[i] = arg == null ? null : new Part(arg, this, queue);
+          }
+        } else {
+          this.parts = new Part[]{new Part(key, this, queue)};
+        }
+      }
+
+      /** Original key or null once collected. */
+      Object get() {
+        if (!composite) {
+          return parts[0].get();
+        }
+        Object[] args = new Object[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+          if (parts[i] != null && (args[i] = parts[i].get()) == null) {
+            return null;
+          }
+        }
+        return MemoKey.copyOf(args);
+      }
+
+      boolean matches(Object key) {
+        if (!composite) {
+          Object referent = parts[0].get();
+          return referent != null && referent.equals(key);
+        }
+        if (!(key instanceof MemoKey) || ((MemoKey) key).size() != parts.length) {
+          return false;
+        }
+        MemoKey args = (MemoKey) key;
+        for (int i = 0; i < parts.length; i++) {
+          Object arg = args.get(i);
+          if (parts[i] == null) {
+            if (arg != null) {
+              return false;
+            }
+          } else {
+            Object referent = parts[i].get();
+            if (referent == null || !referent.equals(arg)) {
+              return false;
+            }
+          }
+        }
+        return true;
+      }
+
+      @Override public int hashCode() {
+        return hash;
+      }
+
+      @Override public boolean equals(Object obj) {
+        if (obj == this) {
+          return true;
+        }
+        if (obj instanceof Lookup) {
+          return matches(((Lookup) obj).key);
+        }
+        if (obj instanceof WeakKey && ((WeakKey) obj).hash == hash) {
+          Object key = ((WeakKey) obj).get();
+          return key != null && matches(key);
+        }
+        return false;
+      }
+    }
+
+    /** Weak reference to a key argument. */
+    private static final class Part extends WeakReference<Object> {
+      final WeakKey owner;
+
+      Part(Object referent, WeakKey owner, ReferenceQueue<Object> queue) {
+        super(referent, queue);
+        this.owner = owner;
+      }
+    }
+
+    /** Strong key used to find a {@link WeakKey}, lives for the duration of a lookup. */
+    private static final class Lookup {
+      final Object key;
+
+      Lookup(Object key) {
+        this.key = key;
+      }
+
+      @Override public int hashCode() {
+        return key.hashCode();
+      }
+
+      @Override public boolean equals(Object obj) {
+        return obj instanceof WeakKey && ((WeakKey) obj).matches(key);
+      }
+    }
+
+    /** Softly referenced value. */
+    private static final class SoftValue extends SoftReference<Object> {
+      /** Map key of the entry. */
+      final Object key;
+
+      SoftValue(Object referent, Object key, ReferenceQueue<Object> queue) {
+        super(referent, queue);
+        this.key = key;
+      }
+    }
+
+    /**
+     * Per-thread, direct mapped table of recently read entries.
+     */
+    private static final class Front<K, V> {
+      final Object[] keys;
+      final Node<K, V>[] nodes;
+      final int mask;
+
+      Front(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.keys = new Object[capacity];
+        this.nodes = nodes(capacity);
+        this.mask = capacity - 1;
+      }
+
+      int index(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+      }
+    }
+
+    private static final class Node<K, V> {
+      @SuppressWarnings("unchecked")
+      static final AtomicIntegerFieldUpdater<Node<?, ?>> REFRESHING = AtomicIntegerFieldUpdater
+          .newUpdater((Class<Node<?, ?>>) (Class<?>) Node.class, "refreshing");
+
+      /** Key or {@link WeakKey}. */
+      final Object key;
+      /** Value, {@link SoftValue}, {@link #NULL} or {@link Failure}. */
+      final Object value;
+      final long writeTime;
+      volatile long accessTime;
+      volatile boolean referenced;
+      volatile boolean removed;
+      volatile int refreshing;
+      /** Clock or weighted entries slot, guarded by lock. */
+      int slot = -1;
+      /** Weight and load time, when bounded by weight. */
+      long weight;
+      long cost;
+      /** GreedyDual priority, when bounded by weight. */
+      volatile double priority;
+
+      Node(Object key, Object value, long now) {
+        this.key = key;
+        this.value = value;
+        this.writeTime = now;
+        this.accessTime = now;
+      }
+    }
+
+    /** Don't record access time more often than this, hot entries stay read-mostly. */
+    private static final long ACCESS_GRANULARITY = 1_000_000L;
+
+    /** Max number of collected references processed per operation. */
+    private static final int DRAIN_MAX = 16;
+
+    /** Number of eviction candidates sampled per weighted eviction. */
+    private static final int SAMPLES = 8;
+
+    private final ConcurrentMap<Object, Node<K, V>> map = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final long expireAfterWrite;
+
+    private final long expireAfterAccess;
+
+    private final long refreshAfterWrite;
+
+    private final long nullTtl;
+
+    private final long failureTtl;
+
+    private final Executor executor;
+
+    private final LongSupplier ticker;
+
+    private final boolean weakKeys;
+
+    private final boolean softValues;
+
+    /** Cleared keys and values, or null when entries are strongly held. */
+    private final ReferenceQueue<Object> queue;
+
+    /** Per-thread front cache, or null when disabled. */
+    private final ThreadLocal<Front<K, V>> front;
+
+    /** True when entries expire or refresh, otherwise the clock is never read. */
+    private final boolean timed;
+
+    /** Shortest time to live, or zero when entries never expire. */
+    private final long expirePeriod;
+
+    /** Clock ring or null when not bounded by size, guarded by lock. */
+    private final Node<K, V>[] clock;
+
+    private final long maximumWeight;
+
+    private final ToLongBiFunction<Object, Object> weigher;
+
+    /** Entries or null when not bounded by weight, guarded by lock. */
+    private Node<K, V>[] entries;
+
+    /** Number of weighted entries, guarded by lock. */
+    private int entryCount;
+
+    /** Total weight of entries, guarded by lock. */
+    private long totalWeight;
+
+    /** GreedyDual inflation value, priority of the last evicted entry. */
+    private volatile double inflation;
+
+    /** Number of ring slots in use, guarded by lock. */
+    private int used;
+
+    /** Clock hand, guarded by lock. */
+    private int hand;
+
+    /** Last time expired entries were purged. */
+    private volatile long lastCleanUp;
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> Node<K, V>[] nodes(int size) {
+      return (Node<K, V>[]) new Node<?, ?>[size];
+    }
+
+    Standard(Builder builder) {
+      this.clock = builder.maximumSize > 0 ? nodes(builder.maximumSize) : null;
+      this.maximumWeight = builder.maximumWeight;
+      this.weigher = builder.weigher;
+      this.entries = maximumWeight > 0 ? nodes(16) : null;
+      this.expireAfterWrite = builder.expireAfterWrite;
+      this.expireAfterAccess = builder.expireAfterAccess;
+      this.refreshAfterWrite = builder.refreshAfterWrite;
+      this.nullTtl = builder.nullTtl;
+      this.failureTtl = builder.failureTtl;
+      this.executor = builder.executor;
+      this.ticker = builder.ticker;
+      this.weakKeys = builder.weakKeys;
+      this.softValues = builder.softValues;
+      this.queue = weakKeys || softValues ? new ReferenceQueue<>() : null;
+      int threadLocalSize = builder.threadLocalSize;
+      this.front = threadLocalSize > 0 ? ThreadLocal.withInitial(() -> new Front<>(threadLocalSize))
+          : null;
+      this.expirePeriod = LongStream.of(expireAfterWrite, expireAfterAccess, nullTtl, failureTtl)
+          .filter(ttl -> ttl > 0)
+          .min()
+          .orElse(0L);
+      this.timed = expirePeriod > 0 || refreshAfterWrite > 0;
+      this.lastCleanUp = now();
+      this.stats = builder.recordStats ? new MemoStats(this::size) : null;
+    }
+
+    @Override protected V getIfPresent(K key) {
+      Node<K, V> node = map.get(lookup(key));
+      if (node == null) {
+        drain();
+        return null;
+      }
+      long now = now();
+      Object value = referent(node);
+      if (value == null || isExpired(node, now)) {
+        evict(node);
+        return null;
+      }
+      onHit(node, now);
+      return isNegative(node) ? null : (V) value;
+    }
+
+    @Override protected V putIfAbsent(K key, V value) {
+      return insert(key, value, 0L);
+    }
+
+    @Override protected V putIfAbsent(K key, V value, long cost) {
+      return insert(key, value, cost);
+    }
+
+    @Override protected void putNull(K key) {
+      if (nullTtl > 0) {
+        insert(key, NULL, 0L);
+      }
+    }
+
+    @Override protected void putFailure(K key, Throwable x) {
+      if (failureTtl > 0) {
+        insert(key, new Failure(x), 0L);
+      }
+    }
+
+    @Override protected boolean costAware() {
+      return entries != null;
+    }
+
+    @Override V get(K key, Throwing.Function<K, V> loader) {
+      Node<K, V> node = live(key);
+      if (node != null) {
+        Object value = referent(node);
+        if (value != null) {
+          return hit(node, value, now(), loader);
+        }
+      }
+      return super.get(key, loader);
+    }
+
+    @Override V getFresh(K key) {
+      Node<K, V> node = live(key);
+      if (node == null || isNegative(node)) {
+        return null;
+      }
+      long now = now();
+      Object value = referent(node);
+      if (value == null
+          || (refreshAfterWrite > 0 && now - node.writeTime >= refreshAfterWrite)) {
+        return null;
+      }
+      return hit(node, value, now, null);
+    }
+
+    /**
+     * Node of a present and not expired key, from the front cache when enabled. Expired nodes
+     * are evicted.
+     *
+     * @return Live node or null.
+     */
+    private Node<K, V> live(K key) {
+      Front<K, V> front = null;
+      int slot = 0;
+      if (this.front != null && !VirtualThreads.isVirtual()) {
+        front = this.front.get();
+        slot = front.index(key);
+        Node<K, V> node = front.nodes[slot];
+        if (node != null && front.keys[slot].equals(key)) {
+          if (!node.removed && referent(node) != null && !isExpired(node, now())) {
+            return node;
+          }
+          front.keys[slot] = null;
+          front.nodes[slot] = null;
+        }
+      }
+      Node<K, V> node = map.get(lookup(key));
+      if (node != null) {
+        if (referent(node) != null && !isExpired(node, now())) {
+          if (front != null) {
+            front.keys[slot] = key;
+            front.nodes[slot] = node;
+          }
+          return node;
+        }
+        evict(node);
+      }
+      return null;
+    }
+
+    @Override void refresh(K key, Throwing.Function<K, V> loader) {
+      Node<K, V> node = map.get(lookup(key));
+      if (node != null && !node.removed && !isNegative(node) && referent(node) != null) {
+        refresh(node, loader);
+      }
+    }
+
+    private V hit(Node<K, V> node, Object value, long now, Throwing.Function<K, V> loader) {
+      if (stats != null) {
+        stats.hit();
+      }
+      onHit(node, now);
+      if (refreshAfterWrite > 0 && now - node.writeTime >= refreshAfterWrite
+          && !isNegative(node)) {
+        refresh(node, loader);
+      }
+      return value(value);
+    }
+
+    @Override protected void invalidate(K key, V value) {
+      Node<K, V> node = map.get(lookup(key));
+      if (node != null && referent(node) == value) {
+        remove(node);
+      }
+    }
+
+    @Override public void invalidate(K key) {
+      Node<K, V> node = map.remove(lookup(key));
+      if (node != null) {
+        discard(node);
+      }
+    }
+
+    @Override public void invalidateAll() {
+      lock.lock();
+      try {
+        map.values().forEach(node -> node.removed = true);
+        map.clear();
+        if (clock != null) {
+          Arrays.fill(clock, null);
+          used = 0;
+          hand = 0;
+        }
+        if (entries != null) {
+          entries = nodes(16);
+          entryCount = 0;
+          totalWeight = 0;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override public long size() {
+      return map.size();
+    }
+
+    @Override protected void forEach(Throwing.Consumer2<K, V> action) {
+      long now = now();
+      for (Node<K, V> node : map.values()) {
+        K key = key(node);
+        Object value = referent(node);
+        if (key != null && value != null && !isNegative(node) && !isExpired(node, now)) {
+          action.accept(key, (V) value);
+        }
+      }
+    }
+
+    private long now() {
+      return timed ? ticker.getAsLong() : 0L;
+    }
+
+    /**
+     * Insert a value, null marker or failure. Replace expired and negative entries.
+     *
+     * @return Previous value or null when the given value was cached.
+     */
+    private V insert(K key, Object value, long cost) {
+      drain();
+      Object mapKey = weakKeys ? new WeakKey(key, queue) : key;
+      Node<K, V> node = new Node<>(mapKey, wrap(mapKey, value), now());
+      weigh(node, key, value, cost);
+      while (true) {
+        Node<K, V> existing = map.putIfAbsent(mapKey, node);
+        if (existing == null) {
+          onInsert(node, null);
+          return null;
+        }
+        Object current = referent(existing);
+        if (current != null && !isExpired(existing, node.writeTime) && !isNegative(existing)) {
+          return (V) current;
+        }
+        if (map.replace(mapKey, existing, node)) {
+          existing.removed = true;
+          onInsert(node, existing);
+          return null;
+        }
+      }
+    }
+
+    private Object lookup(K key) {
+      return weakKeys ? new Lookup(key) : key;
+    }
+
+    private Object wrap(Object mapKey, Object value) {
+      return softValues && value != NULL && !(value instanceof Failure)
+          ? new SoftValue(value, mapKey, queue)
+          : value;
+    }
+
+    /**
+     * Value, null marker or failure of a node.
+     *
+     * @return Node value or null when collected.
+     */
+    private Object referent(Node<K, V> node) {
+      Object value = node.value;
+      return value instanceof SoftValue ? ((SoftValue) value).get() : value;
+    }
+
+    /**
+     * Key of a node.
+     *
+     * @return Node key or null when collected.
+     */
+    private K key(Node<K, V> node) {
+      return (K) (node.key instanceof WeakKey ? ((WeakKey) node.key).get() : node.key);
+    }
+
+    private V value(Object value) {
+      if (value == NULL) {
+        return null;
+      }
+      if (value instanceof Failure) {
+        throw Throwing.sneakyThrow(((Failure) value).cause);
+      }
+      return (V) value;
+    }
+
+    private boolean isNegative(Node<K, V> node) {
+      return node.value == NULL || node.value instanceof Failure;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+      if (node.value == NULL && now - node.writeTime >= nullTtl) {
+        return true;
+      }
+      if (node.value instanceof Failure && now - node.writeTime >= failureTtl) {
+        return true;
+      }
+      return (expireAfterWrite > 0 && now - node.writeTime >= expireAfterWrite)
+          || (expireAfterAccess > 0 && now - node.accessTime >= expireAfterAccess);
+    }
+
+    private void weigh(Node<K, V> node, K key, Object value, long cost) {
+      if (entries != null) {
+        long weight = value == NULL || value instanceof Failure
+            ? 1L
+            : weigher.applyAsLong(key, value);
+        if (weight < 0) {
+          throw new IllegalArgumentException("Negative weight " + weight + " for: " + key);
+        }
+        node.weight = weight;
+        node.cost = cost;
+        node.priority = priority(node);
+      }
+    }
+
+    private double priority(Node<K, V> node) {
+      return inflation + (double) node.cost / Math.max(1L, node.weight);
+    }
+
+    private void onHit(Node<K, V> node, long now) {
+      // skip redundant writes, hot entries don't bounce the cache line between cores
+      if (clock != null && !node.referenced) {
+        node.referenced = true;
+      }
+      if (entries != null) {
+        // only changes after an eviction raised the inflation value
+        double priority = priority(node);
+        if (priority > node.priority) {
+          node.priority = priority;
+        }
+      }
+      if (expireAfterAccess > 0 && now - node.accessTime >= ACCESS_GRANULARITY) {
+        node.accessTime = now;
+      }
+    }
+
+    private boolean remove(Node<K, V> node) {
+      return remove(node.key, node);
+    }
+
+    private boolean remove(Object mapKey, Node<K, V> node) {
+      if (map.remove(mapKey, node)) {
+        discard(node);
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Mark a node removed from the map. Its weight is released right away, so it doesn't push
+     * live entries out while waiting to be sampled. Replaced nodes are released by
+     * {@link #onInsert(Node, Node)} instead.
+     */
+    private void discard(Node<K, V> node) {
+      node.removed = true;
+      if (entries != null) {
+        lock.lock();
+        try {
+          unlink(node);
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    private void evict(Node<K, V> node) {
+      evict(node.key, node);
+    }
+
+    private void evict(Object mapKey, Node<K, V> node) {
+      if (remove(mapKey, node) && stats != null) {
+        stats.eviction();
+      }
+    }
+
+    /**
+     * Discard entries whose key or value was collected. A collected key is only equal to itself,
+     * so the entry is found by the exact key instance held by the map.
+     */
+    private void drain() {
+      if (queue == null) {
+        return;
+      }
+      for (int i = 0; i < DRAIN_MAX; i++) {
+        Reference<?> ref = queue.poll();
+        if (ref == null) {
+          return;
+        }
+        if (ref instanceof SoftValue) {
+          Object mapKey = ((SoftValue) ref).key;
+          Node<K, V> node = map.get(mapKey);
+          if (node != null && node.value == ref) {
+            evict(mapKey, node);
+          }
+        } else {
+          WeakKey mapKey = ((Part) ref).owner;
+          Node<K, V> node = map.get(mapKey);
+          if (node != null) {
+            evict(mapKey, node);
+          }
+        }
+      }
+    }
+
+    private void refresh(Node<K, V> node, Throwing.Function<K, V> loader) {
+      if (!Node.REFRESHING.compareAndSet(node, 0, 1)) {
+        return;
+      }
+      try {
+        executor.execute(() -> {
+          try {
+            K key = key(node);
+            long start = entries == null ? 0L : System.nanoTime();
+            V value = key == null ? null : loader.apply(key);
+            if (value != null) {
+              Node<K, V> fresh = new Node<>(node.key, wrap(node.key, value), now());
+              weigh(fresh, key, value, System.nanoTime() - start);
+              if (map.replace(node.key, node, fresh)) {
+                node.removed = true;
+                onInsert(fresh, node);
+                return;
+              }
+            }
+            node.refreshing = 0;
+          } catch (Throwable x) {
+            // keep serving the stale value, a later read retries
+            node.refreshing = 0;
+            if (Throwing.isFatal(x)) {
+              throw Throwing.sneakyThrow(x);
+            }
+          }
+        });
+      } catch (RejectedExecutionException x) {
+        node.refreshing = 0;
+      }
+    }
+
+    private void onInsert(Node<K, V> node, Node<K, V> replaced) {
+      if (clock != null) {
+        lock.lock();
+        try {
+          if (replaced != null && replaced.slot >= 0 && clock[replaced.slot] == replaced) {
+            node.slot = replaced.slot;
+            clock[node.slot] = node;
+          } else {
+            admit(node);
+          }
+        } finally {
+          lock.unlock();
+        }
+      } else {
+        if (entries != null) {
+          lock.lock();
+          try {
+            unlink(replaced);
+            // removed between the map insert and now, it must not count
+            if (!node.removed) {
+              link(node);
+            }
+            evictByWeight();
+          } finally {
+            lock.unlock();
+          }
+        }
+        if (expirePeriod > 0) {
+          cleanUp(node.writeTime);
+        }
+      }
+    }
+
+    /**
+     * Add a weighted entry, must be called while holding the lock.
+     */
+    private void link(Node<K, V> node) {
+      if (entryCount == entries.length) {
+        entries = Arrays.copyOf(entries, entryCount * 2);
+      }
+      node.slot = entryCount;
+      entries[entryCount++] = node;
+      totalWeight += node.weight;
+    }
+
+    /**
+     * Remove a weighted entry, must be called while holding the lock.
+     */
+    private void unlink(Node<K, V> node) {
+      if (node == null || node.slot < 0 || entries[node.slot] != node) {
+        return;
+      }
+      Node<K, V> last = entries[--entryCount];
+      entries[node.slot] = last;
+      last.slot = node.slot;
+      entries[entryCount] = null;
+      node.slot = -1;
+      totalWeight -= node.weight;
+    }
+
+    /**
+     * Sampled GreedyDual eviction, must be called while holding the lock. Entries already removed
+     * from the map, expired or collected are dropped first and don't raise the inflation value.
+     */
+    private void evictByWeight() {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      long now = now();
+      while (totalWeight > maximumWeight && entryCount > 0) {
+        Node<K, V> victim = null;
+        boolean dead = false;
+        // small tables are scanned, the choice is exact
+        boolean scan = entryCount <= SAMPLES;
+        for (int i = 0; i < Math.min(SAMPLES, entryCount); i++) {
+          Node<K, V> candidate = entries[scan ? i : random.nextInt(entryCount)];
+          if (candidate.removed || referent(candidate) == null || isExpired(candidate, now)) {
+            victim = candidate;
+            dead = true;
+            break;
+          }
+          if (victim == null || candidate.priority < victim.priority) {
+            victim = candidate;
+          }
+        }
+        if (!dead && victim.priority > inflation) {
+          inflation = victim.priority;
+        }
+        evict(victim);
+        unlink(victim);
+      }
+    }
+
+    /**
+     * Clock sweep, must be called while holding the lock.
+     */
+    private void admit(Node<K, V> node) {
+      if (used < clock.length) {
+        node.slot = used;
+        clock[used++] = node;
+        return;
+      }
+      long now = now();
+      while (true) {
+        Node<K, V> victim = clock[hand];
+        if (victim.referenced && !victim.removed && !isExpired(victim, now)) {
+          victim.referenced = false;
+          hand = (hand + 1) % clock.length;
+        } else {
+          evict(victim);
+          victim.slot = -1;
+          node.slot = hand;
+          clock[hand] = node;
+          hand = (hand + 1) % clock.length;
+          return;
+        }
+      }
+    }
+
+    /**
+     * Purge expired entries of unbounded caches, at most once per expiration period so the cost
+     * is amortized across writes.
+     */
+    private void cleanUp(long now) {
+      if (now - lastCleanUp < expirePeriod || !lock.tryLock()) {
+        return;
+      }
+      try {
+        lastCleanUp = now;
+        map.values().forEach(node -> {
+          if (isExpired(node, now)) {
+            evict(node);
+          }
+        });
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Value being computed by the owner thread.
+   */
+  private static final class Loading<V> extends CompletableFuture<V> {
+    private final Thread owner = Thread.currentThread();
+
+    V await(Object key) {
+      if (owner == Thread.currentThread()) {
+        throw new IllegalStateException("Recursive load of: " + key);
+      }
+      try {
+        return get();
+      } catch (ExecutionException x) {
+        throw Throwing.sneakyThrow(x.getCause());
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        throw Throwing.sneakyThrow(x);
+      }
+    }
+  }
+
+  private static final int SNAPSHOT_MAGIC = 0x4D454D4F;
+
+  private static final int SNAPSHOT_VERSION = 1;
+
+  /** Keys being computed. */
+  private final ConcurrentMap<K, Loading<V>> loading = new ConcurrentHashMap<>();
+
+  /** Statistics or null when not recording. */
+  MemoStats stats;
+
+  /**
+   * Creates a cache, for custom storage implementations.
+   */
+  protected MemoCache() {
+  }
+
+  /**
+   * Creates a new cache builder.
+   *
+   * @return A new cache builder.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Creates an unbounded cache.
+   *
+   * @param <K> Key type.
+   * @param <V> Value type.
+   * @return A new cache.
+   */
+  public static <K, V> MemoCache<K, V> concurrent() {
+    return builder().build();
+  }
+
+  /**
+   * Creates a cache keeping at most <code>maximumSize</code> entries.
+   *
+   * @param maximumSize Max number of entries.
+   * @param <K> Key type.
+   * @param <V> Value type.
+   * @return A new cache.
+   */
+  public static <K, V> MemoCache<K, V> bounded(int maximumSize) {
+    return builder().maximumSize(maximumSize).build();
+  }
+
+  /**
+   * Creates a cache whose entries expire once the given duration has elapsed since they were
+   * computed.
+   *
+   * @param timeToLive Time to live.
+   * @param <K> Key type.
+   * @param <V> Value type.
+   * @return A new cache.
+   */
+  public static <K, V> MemoCache<K, V> expiring(Duration timeToLive) {
+    return builder().expireAfterWrite(timeToLive).build();
+  }
+
+  /**
+   * Creates a cache storing entries outside of the Java heap, so large caches cost the garbage
+   * collector nothing. Entries are encoded with the given codecs into a direct buffer of
+   * <code>capacity</code> bytes, plus an index of <code>capacity / 4</code> bytes. Once full, the
+   * oldest entries are evicted first.
+   *
+   * Keys are compared by their encoded bytes, so the key codec must encode equal keys the same
+   * way. For memoized functions use {@link MemoCodec#key(MemoCodec[])}:
+   *
+   * <pre>{@code
+   *
+   *  MemoCache<Object, String> cache = MemoCache.offHeap(256 * 1024 * 1024,
+   *      MemoCodec.key(MemoCodec.int64()), MemoCodec.string());
+   *
+   *  Throwing.Function<Long, String> cached = render.memoized(cache);
+   * }</pre>
+   *
+   * @param capacity Size of the entry log in bytes, at least 1024.
+   * @param keys Key codec.
+   * @param values Value codec.
+   * @param <K> Key type.
+   * @param <V> Value type.
+   * @return A new cache.
+   */
+  public static <K, V> MemoCache<K, V> offHeap(int capacity, MemoCodec<K> keys,
+      MemoCodec<V> values) {
+    return new OffHeapMemoCache<>(capacity, keys, values);
+  }
+
+  /**
+   * Get a cached value or null.
+   *
+   * @param key Key.
+   * @return Cached value or null.
+   */
+  protected abstract V getIfPresent(K key);
+
+  /**
+   * Cache a value unless the key is already present.
+   *
+   * @param key Key.
+   * @param value Value, never null.
+   * @return Previous value or null when the given value was cached.
+   */
+  protected abstract V putIfAbsent(K key, V value);
+
+  /**
+   * Cache a value unless the key is already present.
+   *
+   * @param key Key.
+   * @param value Value, never null.
+   * @param cost Time it took to compute the value, in nanoseconds.
+   * @return Previous value or null when the given value was cached.
+   */
+  protected V putIfAbsent(K key, V value, long cost) {
+    return putIfAbsent(key, value);
+  }
+
+  /**
+   * True when load times are needed by the eviction policy.
+   *
+   * @return True when load times are needed by the eviction policy.
+   */
+  protected boolean costAware() {
+    return false;
+  }
+
+  /**
+   * Cache a null result, when negative caching is enabled.
+   *
+   * @param key Key.
+   */
+  protected void putNull(K key) {
+  }
+
+  /**
+   * Cache a failure, when negative caching is enabled.
+   *
+   * @param key Key.
+   * @param x Failure.
+   */
+  protected void putFailure(K key, Throwable x) {
+  }
+
+  /**
+   * Discard the entry for the given key, if any.
+   *
+   * @param key Key.
+   */
+  public abstract void invalidate(K key);
+
+  /**
+   * Discard the entry for the given key, if it is still mapped to the given value.
+   *
+   * @param key Key.
+   * @param value Expected value.
+   */
+  protected void invalidate(K key, V value) {
+    if (getIfPresent(key) == value) {
+      invalidate(key);
+    }
+  }
+
+  /**
+   * Discard all entries.
+   */
+  public abstract void invalidateAll();
+
+  /**
+   * Approximate number of cached entries.
+   *
+   * @return Approximate number of cached entries.
+   */
+  public abstract long size();
+
+  /**
+   * Iterate live entries, skipping expired entries, cached nulls and failures. Required by
+   * {@link #snapshot(Path, MemoCodec, MemoCodec)}, not supported by default.
+   *
+   * @param action Entry action.
+   */
+  protected void forEach(Throwing.Consumer2<K, V> action) {
+    throw new UnsupportedOperationException("Iteration not supported by: " + getClass().getName());
+  }
+
+  /**
+   * Write live entries to a file, for a later {@link #restore(Path, MemoCodec, MemoCodec)}. The
+   * cache stays usable while the snapshot is written. The file is first written to a temporary
+   * sibling and then moved in place, so a crash never leaves a truncated snapshot behind.
+   *
+   * Cached nulls and failures are not written.
+   *
+   * @param file Snapshot file.
+   * @param keys Key codec, see {@link MemoCodec#key(MemoCodec[])}.
+   * @param values Value codec.
+   * @return Number of written entries.
+   * @throws IOException If something goes wrong.
+   */
+  public int snapshot(Path file, MemoCodec<? super K> keys, MemoCodec<? super V> values)
+      throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try {
+      int[] count = {0};
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeByte(SNAPSHOT_VERSION);
+        forEach((key, value) -> {
+          out.writeBoolean(true);
+          keys.write(out, key);
+          values.write(out, value);
+          count[0] += 1;
+        });
+        out.writeBoolean(false);
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException x) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return count[0];
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Load entries written by {@link #snapshot(Path, MemoCodec, MemoCodec)}. Entries already present
+   * are kept. Restored entries are treated as freshly computed, expiration and refresh start
+   * over. A missing file loads nothing.
+   *
+   * @param file Snapshot file.
+   * @param keys Key codec, see {@link MemoCodec#key(MemoCodec[])}.
+   * @param values Value codec.
+   * @return Number of restored entries.
+   * @throws IOException If the file isn't a snapshot or something goes wrong.
+   */
+  public int restore(Path file, MemoCodec<? extends K> keys, MemoCodec<? extends V> values)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a memo snapshot: " + file);
+      }
+      int version = in.readUnsignedByte();
+      if (version != SNAPSHOT_VERSION) {
+        throw new IOException("Unsupported memo snapshot version " + version + ": " + file);
+      }
+      int count = 0;
+      while (in.readBoolean()) {
+        K key = keys.read(in);
+        V value = values.read(in);
+        if (value != null && putIfAbsent(key, value) == null) {
+          count += 1;
+        }
+      }
+      return count;
+    } catch (NoSuchFileException x) {
+      return 0;
+    }
+  }
+
+  /**
+   * Cache statistics. Counters stay at zero unless {@link Builder#recordStats()} was set.
+   *
+   * @return Cache statistics.
+   */
+  public MemoStats stats() {
+    return stats == null ? new MemoStats(this::size) : stats;
+  }
+
+  /**
+   * Get a cached value or compute it. Loading is single-flight: one thread runs the loader for a
+   * given key while concurrent callers wait for its result, a failure is rethrown to every waiter.
+   * The loader runs without holding any lock. Null results and failures are not cached unless
+   * negative caching is enabled.
+   *
+   * @param key Key.
+   * @param loader Value provider.
+   * @return Cached or computed value.
+   */
+  V get(K key, Throwing.Function<K, V> loader) {
+    V value = getIfPresent(key);
+    if (stats != null) {
+      if (value == null) {
+        stats.miss();
+      } else {
+        stats.hit();
+      }
+    }
+    if (value != null) {
+      return value;
+    }
+    Loading<V> loading = new Loading<>();
+    Loading<V> inflight = this.loading.putIfAbsent(key, loading);
+    if (inflight != null) {
+      return inflight.await(key);
+    }
+    try {
+      // a load might have completed between the first lookup and the registration
+      value = getIfPresent(key);
+      if (value == null) {
+        value = load(key, loader);
+      }
+      loading.complete(value);
+      return value;
+    } catch (Throwable x) {
+      loading.completeExceptionally(x);
+      throw Throwing.sneakyThrow(x);
+    } finally {
+      this.loading.remove(key, loading);
+    }
+  }
+
+  /**
+   * Get a cached value without a loader, for callers that want to skip creating one on a hit.
+   * Returns null on a miss, for cached nulls and failures and when a refresh is due: the caller
+   * then goes through {@link #get(Object, Throwing.Function)}, which handles them. Only hits are
+   * recorded.
+   *
+   * @param key Key.
+   * @return Cached value or null.
+   */
+  V getFresh(K key) {
+    V value = getIfPresent(key);
+    if (value != null && stats != null) {
+      stats.hit();
+    }
+    return value;
+  }
+
+  /**
+   * Reload a present value in the background, callers get the current value meanwhile. Custom
+   * storages replace the value on the {@link ForkJoinPool#commonPool()}, with a short window
+   * where the key is absent.
+   *
+   * @param key Key.
+   * @param loader Value provider.
+   */
+  void refresh(K key, Throwing.Function<K, V> loader) {
+    if (getIfPresent(key) == null) {
+      return;
+    }
+    ForkJoinPool.commonPool().execute(() -> {
+      try {
+        V value = loader.apply(key);
+        if (value != null) {
+          invalidate(key);
+          putIfAbsent(key, value);
+        }
+      } catch (Throwable x) {
+        // keep serving the current value
+        if (Throwing.isFatal(x)) {
+          throw Throwing.sneakyThrow(x);
+        }
+      }
+    });
+  }
+
+  private V load(K key, Throwing.Function<K, V> loader) {
+    V value;
+    boolean timed = stats != null || costAware();
+    long start = timed ? System.nanoTime() : 0L;
+    long time;
+    try {
+      value = loader.apply(key);
+      time = timed ? System.nanoTime() - start : 0L;
+      if (stats != null) {
+        stats.loadSuccess(time);
+      }
+    } catch (Throwable x) {
+      if (stats != null) {
+        stats.loadFailure(System.nanoTime() - start);
+      }
+      if (!Throwing.isFatal(x)) {
+        putFailure(key, x);
+      }
+      throw Throwing.sneakyThrow(x);
+    }
+    if (value == null) {
+      putNull(key);
+      return null;
+    }
+    V existing = putIfAbsent(key, value, time);
+    return existing == null ? value : existing;
+  }
+}
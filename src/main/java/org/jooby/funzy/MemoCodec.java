@@ -0,0 +1,207 @@
+package org.jooby.funzy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of cache keys or values, used by {@link MemoCache#snapshot} and
+ * {@link MemoCache#restore}.
+ *
+ * Keys of memoized functions are encoded with {@link #key(MemoCodec[])}, one codec per function
+ * argument:
+ *
+ * <pre>{@code
+ *
+ *  MemoCache<Object, Item> cache = MemoCache.builder().build();
+ *  Throwing.Function2<String, Integer, Item> find = query::find;
+ *  Throwing.Function2<String, Integer, Item> cached = find.memoized(cache);
+ *
+ *  MemoCodec<Object> keys = MemoCodec.key(MemoCodec.string(), MemoCodec.int32());
+ *  cache.restore(file, keys, MemoCodec.serializable());
+ *  ...
+ *  cache.snapshot(file, keys, MemoCodec.serializable());
+ * }</pre>
+ *
+ * @param <T> Encoded type.
+ */
+public interface MemoCodec<T> {
+
+  /**
+   * Write a value.
+   *
+   * @param out Output.
+   * @param value Value, never null.
+   * @throws IOException If something goes wrong.
+   */
+  void write(DataOutput out, T value) throws IOException;
+
+  /**
+   * Read a value written by {@link #write(DataOutput, Object)}.
+   *
+   * @param in Input.
+   * @return Value.
+   * @throws IOException If something goes wrong.
+   */
+  T read(DataInput in) throws IOException;
+
+  /**
+   * UTF-8 strings.
+   *
+   * @return UTF-8 string codec.
+   */
+  static MemoCodec<String> string() {
+    return new MemoCodec<String>() {
+      @Override public void write(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      @Override public String read(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  /**
+   * Integer values.
+   *
+   * @return Integer codec.
+   */
+  static MemoCodec<Integer> int32() {
+    return new MemoCodec<Integer>() {
+      @Override public void write(DataOutput out, Integer value) throws IOException {
+        out.writeInt(value);
+      }
+
+      @Override public Integer read(DataInput in) throws IOException {
+        return in.readInt();
+      }
+    };
+  }
+
+  /**
+   * Long values.
+   *
+   * @return Long codec.
+   */
+  static MemoCodec<Long> int64() {
+    return new MemoCodec<Long>() {
+      @Override public void write(DataOutput out, Long value) throws IOException {
+        out.writeLong(value);
+      }
+
+      @Override public Long read(DataInput in) throws IOException {
+        return in.readLong();
+      }
+    };
+  }
+
+  /**
+   * Byte arrays.
+   *
+   * @return Byte array codec.
+   */
+  static MemoCodec<byte[]> bytes() {
+    return new MemoCodec<byte[]>() {
+      @Override public void write(DataOutput out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+      }
+
+      @Override public byte[] read(DataInput in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+      }
+    };
+  }
+
+  /**
+   * Java serialization, for types without a dedicated codec.
+   *
+   * @param <T> Value type.
+   * @return Serialization codec.
+   */
+  static <T extends Serializable> MemoCodec<T> serializable() {
+    MemoCodec<byte[]> bytes = bytes();
+    return new MemoCodec<T>() {
+      @Override public void write(DataOutput out, T value) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(buffer)) {
+          stream.writeObject(value);
+        }
+        bytes.write(out, buffer.toByteArray());
+      }
+
+      @SuppressWarnings("unchecked")
+      @Override public T read(DataInput in) throws IOException {
+        try (ObjectInputStream stream = new ObjectInputStream(
+            new ByteArrayInputStream(bytes.read(in)))) {
+          return (T) stream.readObject();
+        } catch (ClassNotFoundException x) {
+          throw new IOException("Unable to read value", x);
+        }
+      }
+    };
+  }
+
+  /**
+   * Key of a memoized function, encoded with one codec per function argument. Null arguments are
+   * supported.
+   *
+   * @param args Argument codecs, one to eight.
+   * @return Key codec.
+   */
+  @SuppressWarnings("unchecked")
+  static MemoCodec<Object> key(MemoCodec<?>... args) {
+    if (args.length < 1 || args.length > 8) {
+      throw new IllegalArgumentException("Expected one to eight argument codecs: " + args.length);
+    }
+    MemoCodec<Object>[] codecs = (MemoCodec<Object>[]) args.clone();
+    return new MemoCodec<Object>() {
+      @Override public void write(DataOutput out, Object key) throws IOException {
+        if (codecs.length == 1) {
+          write(out, codecs[0], MemoKey.value(key));
+        } else {
+          MemoKey values = (MemoKey) key;
+          for (int i = 0; i < codecs.length; i++) {
+            write(out, codecs[i], values.get(i));
+          }
+        }
+      }
+
+      @Override public Object read(DataInput in) throws IOException {
+        if (codecs.length == 1) {
+          return MemoKey.of(read(in, codecs[0]));
+        }
+        Object[] values = new Object[codecs.length];
+        for (int i = 0; i < codecs.length; i++) {
+          values[i] = read(in, codecs[i]);
+        }
+        return MemoKey.copyOf(values);
+      }
+
+      private void write(DataOutput out, MemoCodec<Object> codec, Object value)
+          throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+          codec.write(out, value);
+        }
+      }
+
+      private Object read(DataInput in, MemoCodec<Object> codec) throws IOException {
+        return in.readBoolean() ? codec.read(in) : null;
+      }
+    };
+  }
+}
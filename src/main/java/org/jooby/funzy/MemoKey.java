@@ -0,0 +1,691 @@
+package org.jooby.funzy;
+
+import java.util.Objects;
+
+/**
+ * Composite key of memoized functions with two or more arguments.
+ *
+ * Keys are specialized by arity: the hash is computed once and equality compares arguments field
+ * by field, so a lookup doesn't allocate an argument array or list.
+ */
+public abstract class MemoKey {
+
+  private static final class Key2 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    Key2(Object v1, Object v2) {
+      this.v1 = v1;
+      this.v2 = v2;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 2;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 2");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key2) {
+        Key2 that = (Key2) obj;
+        return hash == that.hash && Objects.equals(v1, that.v1) && Objects.equals(v2, that.v2);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key3 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    Key3(Object v1, Object v2, Object v3) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 3;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 3");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key3) {
+        Key3 that = (Key3) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key4 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    private final Object v4;
+
+    Key4(Object v1, Object v2, Object v3, Object v4) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      this.v4 = v4;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      h = 31 * h + Objects.hashCode(v4);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 4;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        case 3:
+          return v4;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 4");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key4) {
+        Key4 that = (Key4) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3)
+            && Objects.equals(v4, that.v4);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key5 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    private final Object v4;
+
+    private final Object v5;
+
+    Key5(Object v1, Object v2, Object v3, Object v4, Object v5) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      this.v4 = v4;
+      this.v5 = v5;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      h = 31 * h + Objects.hashCode(v4);
+      h = 31 * h + Objects.hashCode(v5);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 5;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        case 3:
+          return v4;
+        case 4:
+          return v5;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 5");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key5) {
+        Key5 that = (Key5) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3)
+            && Objects.equals(v4, that.v4)
+            && Objects.equals(v5, that.v5);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key6 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    private final Object v4;
+
+    private final Object v5;
+
+    private final Object v6;
+
+    Key6(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      this.v4 = v4;
+      this.v5 = v5;
+      this.v6 = v6;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      h = 31 * h + Objects.hashCode(v4);
+      h = 31 * h + Objects.hashCode(v5);
+      h = 31 * h + Objects.hashCode(v6);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 6;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        case 3:
+          return v4;
+        case 4:
+          return v5;
+        case 5:
+          return v6;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 6");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key6) {
+        Key6 that = (Key6) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3)
+            && Objects.equals(v4, that.v4)
+            && Objects.equals(v5, that.v5)
+            && Objects.equals(v6, that.v6);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key7 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    private final Object v4;
+
+    private final Object v5;
+
+    private final Object v6;
+
+    private final Object v7;
+
+    Key7(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6, Object v7) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      this.v4 = v4;
+      this.v5 = v5;
+      this.v6 = v6;
+      this.v7 = v7;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      h = 31 * h + Objects.hashCode(v4);
+      h = 31 * h + Objects.hashCode(v5);
+      h = 31 * h + Objects.hashCode(v6);
+      h = 31 * h + Objects.hashCode(v7);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 7;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        case 3:
+          return v4;
+        case 4:
+          return v5;
+        case 5:
+          return v6;
+        case 6:
+          return v7;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 7");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key7) {
+        Key7 that = (Key7) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3)
+            && Objects.equals(v4, that.v4)
+            && Objects.equals(v5, that.v5)
+            && Objects.equals(v6, that.v6)
+            && Objects.equals(v7, that.v7);
+      }
+      return false;
+    }
+  }
+
+  private static final class Key8 extends MemoKey {
+    private final int hash;
+
+    private final Object v1;
+
+    private final Object v2;
+
+    private final Object v3;
+
+    private final Object v4;
+
+    private final Object v5;
+
+    private final Object v6;
+
+    private final Object v7;
+
+    private final Object v8;
+
+    Key8(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6, Object v7, Object v8) {
+      this.v1 = v1;
+      this.v2 = v2;
+      this.v3 = v3;
+      this.v4 = v4;
+      this.v5 = v5;
+      this.v6 = v6;
+      this.v7 = v7;
+      this.v8 = v8;
+      int h = 1;
+      h = 31 * h + Objects.hashCode(v1);
+      h = 31 * h + Objects.hashCode(v2);
+      h = 31 * h + Objects.hashCode(v3);
+      h = 31 * h + Objects.hashCode(v4);
+      h = 31 * h + Objects.hashCode(v5);
+      h = 31 * h + Objects.hashCode(v6);
+      h = 31 * h + Objects.hashCode(v7);
+      h = 31 * h + Objects.hashCode(v8);
+      this.hash = h;
+    }
+
+    @Override public int size() {
+      return 8;
+    }
+
+    @Override public Object get(int index) {
+      switch (index) {
+        case 0:
+          return v1;
+        case 1:
+          return v2;
+        case 2:
+          return v3;
+        case 3:
+          return v4;
+        case 4:
+          return v5;
+        case 5:
+          return v6;
+        case 6:
+          return v7;
+        case 7:
+          return v8;
+        default:
+          throw new IndexOutOfBoundsException("Index: " + index + ", size: 8");
+      }
+    }
+
+    @Override public int hashCode() {
+      return hash;
+    }
+
+    @Override public boolean equals(Object obj) {
+      if (obj == this) {
+        return true;
+      }
+      if (obj instanceof Key8) {
+        Key8 that = (Key8) obj;
+        return hash == that.hash
+            && Objects.equals(v1, that.v1)
+            && Objects.equals(v2, that.v2)
+            && Objects.equals(v3, that.v3)
+            && Objects.equals(v4, that.v4)
+            && Objects.equals(v5, that.v5)
+            && Objects.equals(v6, that.v6)
+            && Objects.equals(v7, that.v7)
+            && Objects.equals(v8, that.v8);
+      }
+      return false;
+    }
+  }
+
+  /** Key of single argument functions invoked with null. */
+  private static final Object NULL = new Object() {
+    @Override public String toString() {
+      return "null";
+    }
+  };
+
+  /** Key of functions without arguments. */
+  static final Object NONE = new Object() {
+    @Override public String toString() {
+      return "[]";
+    }
+  };
+
+  MemoKey() {
+  }
+
+  /**
+   * Number of arguments.
+   *
+   * @return Number of arguments.
+   */
+  public abstract int size();
+
+  /**
+   * Argument at the given position.
+   *
+   * @param index Argument position.
+   * @return Argument at the given position.
+   */
+  public abstract Object get(int index);
+
+  @Override public String toString() {
+    StringBuilder buff = new StringBuilder("[");
+    for (int i = 0; i < size(); i++) {
+      if (i > 0) {
+        buff.append(", ");
+      }
+      buff.append(get(i));
+    }
+    return buff.append("]").toString();
+  }
+
+  /**
+   * Creates a key of 2 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2) {
+    return new Key2(v1, v2);
+  }
+
+  /**
+   * Creates a key of 3 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3) {
+    return new Key3(v1, v2, v3);
+  }
+
+  /**
+   * Creates a key of 4 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @param v4 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3, Object v4) {
+    return new Key4(v1, v2, v3, v4);
+  }
+
+  /**
+   * Creates a key of 5 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @param v4 Argument.
+   * @param v5 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3, Object v4, Object v5) {
+    return new Key5(v1, v2, v3, v4, v5);
+  }
+
+  /**
+   * Creates a key of 6 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @param v4 Argument.
+   * @param v5 Argument.
+   * @param v6 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6) {
+    return new Key6(v1, v2, v3, v4, v5, v6);
+  }
+
+  /**
+   * Creates a key of 7 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @param v4 Argument.
+   * @param v5 Argument.
+   * @param v6 Argument.
+   * @param v7 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6,
+      Object v7) {
+    return new Key7(v1, v2, v3, v4, v5, v6, v7);
+  }
+
+  /**
+   * Creates a key of 8 arguments.
+   *
+   * @param v1 Argument.
+   * @param v2 Argument.
+   * @param v3 Argument.
+   * @param v4 Argument.
+   * @param v5 Argument.
+   * @param v6 Argument.
+   * @param v7 Argument.
+   * @param v8 Argument.
+   * @return A new key.
+   */
+  public static MemoKey of(Object v1, Object v2, Object v3, Object v4, Object v5, Object v6,
+      Object v7, Object v8) {
+    return new Key8(v1, v2, v3, v4, v5, v6, v7, v8);
+  }
+
+  /**
+   * Key of a single argument function, the argument itself or a marker for null.
+   *
+   * @param value Argument.
+   * @return Key.
+   */
+  static Object of(Object value) {
+    return value == null ? NULL : value;
+  }
+
+  /**
+   * Creates a key from an array of two to eight arguments.
+   *
+   * @param values Arguments.
+   * @return A new key.
+   */
+  static MemoKey copyOf(Object[] values) {
+    switch (values.length) {
+      case 2:
+        return of(values[0], values[1]);
+      case 3:
+        return of(values[0], values[1], values[2]);
+      case 4:
+        return of(values[0], values[1], values[2], values[3]);
+      case 5:
+        return of(values[0], values[1], values[2], values[3], values[4]);
+      case 6:
+        return of(values[0], values[1], values[2], values[3], values[4], values[5]);
+      case 7:
+        return of(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+      case 8:
+        return of(values[0], values[1], values[2], values[3], values[4], values[5], values[6],
+            values[7]);
+      default:
+        throw new IllegalArgumentException("Unsupported number of arguments: " + values.length);
+    }
+  }
+
+  /**
+   * Argument of a single argument function key.
+   *
+   * @param key Key.
+   * @return Argument.
+   */
+  static Object value(Object key) {
+    return key == NULL ? null : key;
+  }
+}
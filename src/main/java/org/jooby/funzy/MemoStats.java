@@ -0,0 +1,278 @@
+package org.jooby.funzy;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MXBean;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Statistics of a {@link MemoCache}, enabled via {@link MemoCache.Builder#recordStats()}.
+ *
+ * Counters are striped ({@link LongAdder}), so recording doesn't add contention to the hit path.
+ * Values are read without synchronization and might be slightly out of date while the cache is in
+ * use.
+ *
+ * <pre>{@code
+ *
+ *  MemoCache<Object, Item> cache = MemoCache.builder()
+ *      .maximumSize(1000)
+ *      .recordStats()
+ *      .build();
+ *
+ *  Throwing.Function<String, Item> findById = query::findById;
+ *  Throwing.Function<String, Item> cached = findById.memoized(cache);
+ *
+ *  MemoStats stats = cache.stats();
+ *  System.out.println(stats.hitRate());
+ *
+ *  // optionally
+ *  stats.register("items");
+ * }</pre>
+ */
+public class MemoStats {
+
+  /**
+   * JMX view of {@link MemoStats}.
+   */
+  @MXBean
+  public interface MBean {
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    long getTotalLoadTime();
+
+    long getMaxLoadTime();
+
+    double getAverageLoadPenalty();
+
+    long getEvictionCount();
+
+    long getSize();
+  }
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder loadSuccess = new LongAdder();
+
+  private final LongAdder loadFailure = new LongAdder();
+
+  private final LongAdder totalLoadTime = new LongAdder();
+
+  private final LongAccumulator maxLoadTime = new LongAccumulator(Long::max, 0L);
+
+  private final LongAdder evictions = new LongAdder();
+
+  private final LongSupplier size;
+
+  MemoStats(LongSupplier size) {
+    this.size = size;
+  }
+
+  /**
+   * Number of calls served from cache.
+   *
+   * @return Number of calls served from cache.
+   */
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Number of calls not served from cache, including the calls that waited for a concurrent load.
+   *
+   * @return Number of calls not served from cache.
+   */
+  public long missCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Ratio of calls served from cache, <code>1.0</code> when there were no calls.
+   *
+   * @return Ratio of calls served from cache.
+   */
+  public double hitRate() {
+    long hits = hitCount();
+    long requests = hits + missCount();
+    return requests == 0 ? 1.0 : (double) hits / requests;
+  }
+
+  /**
+   * Number of times the function completed normally.
+   *
+   * @return Number of times the function completed normally.
+   */
+  public long loadSuccessCount() {
+    return loadSuccess.sum();
+  }
+
+  /**
+   * Number of times the function failed.
+   *
+   * @return Number of times the function failed.
+   */
+  public long loadFailureCount() {
+    return loadFailure.sum();
+  }
+
+  /**
+   * Total number of times the function ran, successfully or not.
+   *
+   * @return Total number of times the function ran.
+   */
+  public long loadCount() {
+    return loadSuccessCount() + loadFailureCount();
+  }
+
+  /**
+   * Time spent running the function, in nanoseconds.
+   *
+   * @return Time spent running the function, in nanoseconds.
+   */
+  public long totalLoadTime() {
+    return totalLoadTime.sum();
+  }
+
+  /**
+   * Slowest function execution, in nanoseconds.
+   *
+   * @return Slowest function execution, in nanoseconds.
+   */
+  public long maxLoadTime() {
+    return maxLoadTime.get();
+  }
+
+  /**
+   * Average time spent running the function, in nanoseconds.
+   *
+   * @return Average time spent running the function, in nanoseconds.
+   */
+  public double averageLoadPenalty() {
+    long loads = loadCount();
+    return loads == 0 ? 0.0 : (double) totalLoadTime() / loads;
+  }
+
+  /**
+   * Number of entries discarded because of size bound or expiration.
+   *
+   * @return Number of evicted entries.
+   */
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * Approximate number of cached entries.
+   *
+   * @return Approximate number of cached entries.
+   */
+  public long size() {
+    return size.getAsLong();
+  }
+
+  /**
+   * Register these statistics in the platform MBean server under
+   * <code>org.jooby.funzy:type=MemoCache,name=[name]</code>.
+   *
+   * @param name Cache name.
+   * @return Object name.
+   */
+  public ObjectName register(String name) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName("org.jooby.funzy:type=MemoCache,name="
+          + ObjectName.quote(name));
+      server.registerMBean(new MBean() {
+        @Override public long getHitCount() {
+          return hitCount();
+        }
+
+        @Override public long getMissCount() {
+          return missCount();
+        }
+
+        @Override public double getHitRate() {
+          return hitRate();
+        }
+
+        @Override public long getLoadSuccessCount() {
+          return loadSuccessCount();
+        }
+
+        @Override public long getLoadFailureCount() {
+          return loadFailureCount();
+        }
+
+        @Override public long getTotalLoadTime() {
+          return totalLoadTime();
+        }
+
+        @Override public long getMaxLoadTime() {
+          return maxLoadTime();
+        }
+
+        @Override public double getAverageLoadPenalty() {
+          return averageLoadPenalty();
+        }
+
+        @Override public long getEvictionCount() {
+          return evictionCount();
+        }
+
+        @Override public long getSize() {
+          return size();
+        }
+      }, objectName);
+      return objectName;
+    } catch (JMException x) {
+      throw Throwing.sneakyThrow(x);
+    }
+  }
+
+  void hit() {
+    hits.increment();
+  }
+
+  void miss() {
+    misses.increment();
+  }
+
+  void loadSuccess(long time) {
+    loadSuccess.increment();
+    loadTime(time);
+  }
+
+  void loadFailure(long time) {
+    loadFailure.increment();
+    loadTime(time);
+  }
+
+  void eviction() {
+    evictions.increment();
+  }
+
+  private void loadTime(long time) {
+    totalLoadTime.add(time);
+    maxLoadTime.accumulate(time);
+  }
+
+  @Override public String toString() {
+    return "MemoStats{hitCount=" + hitCount() + ", missCount=" + missCount()
+        + ", loadSuccessCount=" + loadSuccessCount() + ", loadFailureCount=" + loadFailureCount()
+        + ", totalLoadTime=" + totalLoadTime() + ", maxLoadTime=" + maxLoadTime()
+        + ", evictionCount=" + evictionCount() + ", size=" + size() + "}";
+  }
+}
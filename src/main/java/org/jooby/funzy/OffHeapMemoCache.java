@@ -0,0 +1,386 @@
+package org.jooby.funzy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Cache storing encoded entries outside of the Java heap, see
+ * {@link MemoCache#offHeap(int, MemoCodec, MemoCodec)}.
+ *
+ * Entries are appended to a circular log in a direct buffer: <code>[hash, key length, value
+ * length, key, value]</code>. When the log is full the oldest entries are overwritten (FIFO). An
+ * open addressing table with linear probing, also off-heap, maps keys to log positions; deletes
+ * shift entries back, so there are no tombstones.
+ *
+ * Reads are optimistic ({@link StampedLock}): the entry is looked up and its bytes copied without
+ * locking, then the read is validated and retried under the read lock if a write happened
+ * meanwhile. The stamp is also checked before the value is copied, so lengths of a record being
+ * overwritten never size an allocation. Values are decoded outside of any lock.
+ *
+ * @param <K> Key type.
+ * @param <V> Value type.
+ */
+final class OffHeapMemoCache<K, V> extends MemoCache<K, V> {
+
+  /** Reusable encoding buffer. */
+  private static final class Encoder extends ByteArrayOutputStream {
+    final DataOutputStream out = new DataOutputStream(this);
+
+    int keyLength;
+
+    byte[] bytes() {
+      return buf;
+    }
+  }
+
+  private static final ThreadLocal<Encoder> ENCODER = ThreadLocal.withInitial(Encoder::new);
+
+  /** Hash, key length and value length. */
+  private static final int HEADER = 12;
+
+  /** Key length of the padding left at the end of the log when a record doesn't fit. */
+  private static final int PAD = -1;
+
+  private final MemoCodec<K> keys;
+
+  private final MemoCodec<V> values;
+
+  private final int capacity;
+
+  private final ByteBuffer data;
+
+  /** Log position + 1 of each entry, zero for free slots. */
+  private final LongBuffer index;
+
+  private final int mask;
+
+  private final int shift;
+
+  private final StampedLock lock = new StampedLock();
+
+  /** Log position of the oldest record, guarded by lock. */
+  private long head;
+
+  /** Log position of the next record, guarded by lock. */
+  private long tail;
+
+  /** Number of entries, guarded by lock. */
+  private volatile int count;
+
+  OffHeapMemoCache(int capacity, MemoCodec<K> keys, MemoCodec<V> values) {
+    if (capacity < 1024) {
+      throw new IllegalArgumentException("Capacity must be at least 1024 bytes: " + capacity);
+    }
+    this.keys = Objects.requireNonNull(keys, "Key codec required.");
+    this.values = Objects.requireNonNull(values, "Value codec required.");
+    this.capacity = capacity;
+    this.data = ByteBuffer.allocateDirect(capacity);
+    int slots = Integer.highestOneBit(capacity / 32);
+    this.index = ByteBuffer.allocateDirect(slots * Long.BYTES).asLongBuffer();
+    this.mask = slots - 1;
+    this.shift = Integer.numberOfLeadingZeros(slots) + 1;
+  }
+
+  @Override protected V getIfPresent(K key) {
+    Encoder encoder = encode(key, null);
+    byte[] bytes = encoder.bytes();
+    int length = encoder.size();
+    int hash = hash(bytes, length);
+    byte[] value;
+    long stamp = lock.tryOptimisticRead();
+    try {
+      value = find(stamp, hash, bytes, length);
+    } catch (RuntimeException x) {
+      // inconsistent view of a concurrent write
+      value = null;
+      stamp = 0L;
+    }
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        value = find(stamp, hash, bytes, length);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return value == null ? null : decode(values, value);
+  }
+
+  @Override protected V putIfAbsent(K key, V value) {
+    Encoder encoder = encode(key, value);
+    byte[] bytes = encoder.bytes();
+    int keyLength = encoder.keyLength;
+    int valueLength = encoder.size() - keyLength;
+    int size = HEADER + keyLength + valueLength;
+    int hash = hash(bytes, keyLength);
+    if (size > capacity) {
+      // doesn't fit, not cached
+      return null;
+    }
+    byte[] existing;
+    long stamp = lock.writeLock();
+    try {
+      existing = find(stamp, hash, bytes, keyLength);
+      if (existing == null) {
+        append(hash, bytes, keyLength, valueLength);
+        return null;
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    return decode(values, existing);
+  }
+
+  @Override public void invalidate(K key) {
+    Encoder encoder = encode(key, null);
+    byte[] bytes = encoder.bytes();
+    int length = encoder.size();
+    int hash = hash(bytes, length);
+    long stamp = lock.writeLock();
+    try {
+      int slot = slot(hash, bytes, length);
+      if (slot >= 0) {
+        delete(slot);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override public void invalidateAll() {
+    long stamp = lock.writeLock();
+    try {
+      for (int i = 0; i <= mask; i++) {
+        index.put(i, 0L);
+      }
+      head = tail;
+      count = 0;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  @Override public long size() {
+    return count;
+  }
+
+  @Override protected void forEach(Throwing.Consumer2<K, V> action) {
+    List<byte[]> entries = new ArrayList<>();
+    long stamp = lock.readLock();
+    try {
+      for (int i = 0; i <= mask; i++) {
+        long pos = index.get(i);
+        if (pos != 0L) {
+          int offset = offset(pos - 1);
+          entries.add(copy(offset + 4, HEADER - 4 + data.getInt(offset + 4)
+              + data.getInt(offset + 8)));
+        }
+      }
+    } finally {
+      lock.unlockRead(stamp);
+    }
+    for (byte[] entry : entries) {
+      ByteBuffer record = ByteBuffer.wrap(entry);
+      int keyLength = record.getInt();
+      int valueLength = record.getInt();
+      byte[] key = new byte[keyLength];
+      byte[] value = new byte[valueLength];
+      record.get(key);
+      record.get(value);
+      action.accept(decode(keys, key), decode(values, value));
+    }
+  }
+
+  private Encoder encode(K key, V value) {
+    Encoder encoder = VirtualThreads.isVirtual() ? new Encoder() : ENCODER.get();
+    encoder.reset();
+    try {
+      keys.write(encoder.out, key);
+      encoder.keyLength = encoder.size();
+      if (value != null) {
+        values.write(encoder.out, value);
+      }
+      return encoder;
+    } catch (IOException x) {
+      throw Throwing.sneakyThrow(x);
+    }
+  }
+
+  private static <T> T decode(MemoCodec<T> codec, byte[] bytes) {
+    try {
+      return codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    } catch (IOException x) {
+      throw Throwing.sneakyThrow(x);
+    }
+  }
+
+  private static int hash(byte[] key, int length) {
+    int h = 1;
+    for (int i = 0; i < length; i++) {
+      h = 31 * h + key[i];
+    }
+    return h;
+  }
+
+  private int home(int hash) {
+    return (hash * 0x9E3779B9) >>> shift;
+  }
+
+  private int offset(long pos) {
+    return (int) (pos % capacity);
+  }
+
+  /**
+   * Value bytes of the given key or null. Returns null as soon as the stamp is invalid, callers
+   * validate it again and retry under the lock.
+   */
+  private byte[] find(long stamp, int hash, byte[] key, int length) {
+    int slot = slot(hash, key, length);
+    if (slot < 0 || !lock.validate(stamp)) {
+      return null;
+    }
+    int offset = offset(index.get(slot) - 1);
+    int valueLength = data.getInt(offset + 8);
+    if (!lock.validate(stamp)) {
+      return null;
+    }
+    return copy(offset + HEADER + length, valueLength);
+  }
+
+  /**
+   * Index slot of the given key or -1.
+   */
+  private int slot(int hash, byte[] key, int length) {
+    int i = home(hash);
+    for (int n = 0; n <= mask; n++) {
+      long pos = index.get(i);
+      if (pos == 0L) {
+        return -1;
+      }
+      int offset = offset(pos - 1);
+      if (data.getInt(offset) == hash && data.getInt(offset + 4) == length
+          && matches(offset + HEADER, key, length)) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  private boolean matches(int offset, byte[] key, int length) {
+    ByteBuffer stored = view(offset);
+    ((Buffer) stored).limit(offset + length);
+    return stored.equals(ByteBuffer.wrap(key, 0, length));
+  }
+
+  private byte[] copy(int offset, int length) {
+    if (length < 0 || length > capacity) {
+      throw new IllegalStateException("Corrupted length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    view(offset).get(bytes);
+    return bytes;
+  }
+
+  /**
+   * View of the log starting at the given offset, for bulk reads and writes. Positioned through
+   * {@link Buffer} so the call links on Java 8.
+   */
+  private ByteBuffer view(int offset) {
+    ByteBuffer view = data.duplicate();
+    ((Buffer) view).position(offset);
+    return view;
+  }
+
+  /**
+   * Append a record, evicting the oldest ones as needed. Called while holding the write lock.
+   */
+  private void append(int hash, byte[] bytes, int keyLength, int valueLength) {
+    int size = HEADER + keyLength + valueLength;
+    int offset = offset(tail);
+    // records never wrap, skip the end of the log when it doesn't fit
+    long start = offset + size > capacity ? tail + capacity - offset : tail;
+    long end = start + size;
+    while (head < tail && (end - head > capacity || (count + 1) * 2 > mask + 1)) {
+      evict();
+    }
+    if (head == tail) {
+      head = start;
+    } else if (start != tail && capacity - offset >= 8) {
+      data.putInt(offset + 4, PAD);
+    }
+    int at = offset(start);
+    data.putInt(at, hash);
+    data.putInt(at + 4, keyLength);
+    data.putInt(at + 8, valueLength);
+    view(at + HEADER).put(bytes, 0, keyLength + valueLength);
+    int i = home(hash);
+    while (index.get(i) != 0L) {
+      i = (i + 1) & mask;
+    }
+    index.put(i, start + 1);
+    count += 1;
+    tail = end;
+  }
+
+  /**
+   * Drop the oldest record of the log. Called while holding the write lock.
+   */
+  private void evict() {
+    int offset = offset(head);
+    if (capacity - offset < HEADER || data.getInt(offset + 4) == PAD) {
+      head += capacity - offset;
+      return;
+    }
+    int hash = data.getInt(offset);
+    int i = home(hash);
+    for (int n = 0; n <= mask; n++) {
+      long pos = index.get(i);
+      if (pos == 0L) {
+        // invalidated
+        break;
+      }
+      if (pos - 1 == head) {
+        delete(i);
+        break;
+      }
+      i = (i + 1) & mask;
+    }
+    head += HEADER + data.getInt(offset + 4) + data.getInt(offset + 8);
+  }
+
+  /**
+   * Free an index slot, shifting back entries of the same probe sequence. Called while holding
+   * the write lock.
+   */
+  private void delete(int slot) {
+    int i = slot;
+    int j = slot;
+    while (true) {
+      j = (j + 1) & mask;
+      long pos = index.get(j);
+      if (pos == 0L) {
+        break;
+      }
+      int k = home(data.getInt(offset(pos - 1)));
+      // move the entry unless its home slot lies cyclically in (i, j]
+      boolean stays = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+      if (!stays) {
+        index.put(i, pos);
+        i = j;
+      }
+    }
+    index.put(i, 0L);
+    count -= 1;
+  }
+}
@@ -1,11 +1,14 @@
 package org.jooby.funzy;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Collection of throwable interfaces to simplify exception handling, specially on lambdas.
@@ -234,7 +237,8 @@ public class Throwing {
     }
 
     /**
-     * Singleton version of this supplier.
+     * Singleton version of this supplier. The supplier runs once, concurrent callers wait for
+     * the result and a failure is rethrown to all of them.
      *
      * @return A memo function.
      */
@@ -242,16 +246,62 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      AtomicReference<V> ref = new AtomicReference<>();
-      return (Supplier<V> & Memoized) () -> {
-        if (ref.get() == null) {
-          ref.set(tryGet());
-        }
-        return ref.get();
-      };
+      return singleton(MemoCache.builder().build());
+    }
+
+    /**
+     * Singleton version of this supplier whose value expires once the given duration has elapsed
+     * since it was computed. The next call after expiration computes a new value.
+     *
+     * @param timeToLive Time to live of the value.
+     * @return A memo function.
+     */
+    default Singleton<V> singleton(Duration timeToLive) {
+      return singleton(MemoCache.expiring(timeToLive));
+    }
+
+    /**
+     * Singleton version of this supplier, keeping its value in the given cache. See
+     * {@link MemoCache#builder()} for expiration and refresh options. For example credentials
+     * that are renewed in the background, while callers keep getting the current ones:
+     *
+     * <pre>{@code
+     *
+     *  Throwing.Supplier<Token> login = this::login;
+     *  Throwing.Singleton<Token> token = login.singleton(MemoCache.builder()
+     *      .refreshAfterWrite(Duration.ofMinutes(50))
+     *      .expireAfterWrite(Duration.ofMinutes(60))
+     *      .build());
+     * }</pre>
+     *
+     * @param cache Cache for this supplier, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Singleton<V> singleton(MemoCache<Object, V> cache) {
+      return new MemoSingleton<>(this, cache);
     }
   }
 
+  /**
+   * Singleton {@link Supplier} with a resettable value, see {@link Supplier#singleton(Duration)}
+   * and {@link Supplier#singleton(MemoCache)}. Reading the value never takes a lock.
+   *
+   * @param <V> Output type.
+   */
+  public interface Singleton<V> extends Supplier<V> {
+    /**
+     * Discard the current value, the next call computes a new one.
+     */
+    void invalidate();
+
+    /**
+     * Compute a new value in the background. Callers keep getting the current value until the
+     * new one replaces it; a failed refresh keeps the current value. Does nothing when there is
+     * no value yet.
+     */
+    void refresh();
+  }
+
   /**
    * Throwable version of {@link java.util.function.Consumer}.
    *
@@ -1166,13 +1216,149 @@ public class Throwing {
      * @return A memo function.
      */
     default Function<V, R> memoized() {
-      if (this instanceof Memoized) {
-        return this;
+      return memoizedFunction();
+    }
+
+    /**
+     * Same as {@link #memoized()}, typed as a {@link MemoizedFunction} so it can be warmed up.
+     *
+     * @return A memo function.
+     */
+    default MemoizedFunction<V, R> memoizedFunction() {
+      if (this instanceof MemoizedFunction) {
+        return (MemoizedFunction<V, R>) this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function<V, R> & Memoized) value -> memo(cache, Arrays.asList(value),
-          () -> tryApply(value));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * Same as {@link #memoized(MemoCache)}, typed as a {@link MemoizedFunction} so it can be
+     * warmed up.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default MemoizedFunction<V, R> memoizedFunction(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function<V, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function<V, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * argument, instead of the whole argument. Useful when argument are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function<V, R> memoizedBy(Function<? super V, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * argument, using the given cache. See {@link #memoizedBy(Function)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function<V, R> memoizedBy(Function<? super V, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
+
+    /**
+     * Asynchronous version of {@link #memoized()}. The function runs on the given executor and
+     * the pending result is cached per argument: concurrent callers share the same future and
+     * never block on a miss. A failed future is discarded, so the next call tries again.
+     *
+     * @param executor Executor that runs this function.
+     * @return A memo function.
+     */
+    default Function<V, CompletableFuture<R>> memoizedAsync(Executor executor) {
+      return memoizedAsync(MemoCache.builder().build(), executor);
+    }
+
+    /**
+     * Asynchronous version of {@link #memoized(MemoCache)}. The function runs on the given
+     * executor and the pending result is cached per argument: concurrent callers share the same
+     * future and never block on a miss. A failed future is discarded, so the next call tries
+     * again.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @param executor Executor that runs this function.
+     * @return A memo function.
+     */
+    default Function<V, CompletableFuture<R>> memoizedAsync(
+        MemoCache<Object, CompletableFuture<R>> cache, Executor executor) {
+      return memoAsync(this, cache, executor);
+    }
+  }
+
+  /**
+   * A memoized function which can be warmed up before taking traffic, see
+   * {@link Function#memoizedFunction()}. Functions returned by {@link Function#memoized()} and its
+   * variants implement it too.
+   *
+   * @param <V> Input type.
+   * @param <R> Output type.
+   */
+  public interface MemoizedFunction<V, R> extends Function<V, R> {
+
+    /**
+     * Warm up this function: compute the given arguments in parallel on the
+     * {@link ForkJoinPool#commonPool()} and cache the results. Arguments already cached are
+     * skipped. Each argument goes through the cache like a regular call, so results are visible
+     * as soon as they are computed and concurrent callers wait for a pending argument instead of
+     * computing it again. A failure is rethrown, results computed so far stay cached.
+     *
+     * <pre>{@code
+     *
+     *  Throwing.MemoizedFunction<String, Item> cached = findById.memoizedFunction()
+     *      .preload(topIds);
+     * }</pre>
+     *
+     * @param values Arguments to compute.
+     * @return This function.
+     */
+    MemoizedFunction<V, R> preload(Collection<? extends V> values);
+
+    /**
+     * Asynchronous version of {@link #preload(Collection)}. Arguments are computed on a new
+     * {@link ForkJoinPool} with the given parallelism, shut down once done.
+     *
+     * @param values Arguments to compute.
+     * @param parallelism Number of worker threads.
+     * @return A future completed with this function once every argument is cached.
+     */
+    CompletableFuture<MemoizedFunction<V, R>> preloadAsync(Collection<? extends V> values,
+        int parallelism);
   }
 
   /**
@@ -1304,9 +1490,57 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function2<V1, V2, R> & Memoized) (v1, v2) -> memo(cache, Arrays.asList(v1, v2),
-          () -> tryApply(v1, v2));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function2<V1, V2, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function2<V1, V2, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function2<V1, V2, R> memoizedBy(Function2<? super V1, ? super V2, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function2)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function2<V1, V2, R> memoizedBy(Function2<? super V1, ? super V2, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -1443,10 +1677,59 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function3<V1, V2, V3, R> & Memoized) (v1, v2, v3) -> memo(cache,
-          Arrays.asList(v1, v2, v3),
-          () -> tryApply(v1, v2, v3));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function3<V1, V2, V3, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function3<V1, V2, V3, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function3<V1, V2, V3, R> memoizedBy(
+        Function3<? super V1, ? super V2, ? super V3, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function3)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function3<V1, V2, V3, R> memoizedBy(
+        Function3<? super V1, ? super V2, ? super V3, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -1586,10 +1869,59 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function4<V1, V2, V3, V4, R> & Memoized) (v1, v2, v3, v4) -> memo(cache,
-          Arrays.asList(v1, v2, v3, v4),
-          () -> tryApply(v1, v2, v3, v4));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function4<V1, V2, V3, V4, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function4<V1, V2, V3, V4, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function4<V1, V2, V3, V4, R> memoizedBy(
+        Function4<? super V1, ? super V2, ? super V3, ? super V4, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function4)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function4<V1, V2, V3, V4, R> memoizedBy(
+        Function4<? super V1, ? super V2, ? super V3, ? super V4, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -1733,10 +2065,59 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function5<V1, V2, V3, V4, V5, R> & Memoized) (v1, v2, v3, v4, v5) -> memo(cache,
-          Arrays.asList(v1, v2, v3, v4, v5),
-          () -> tryApply(v1, v2, v3, v4, v5));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function5<V1, V2, V3, V4, V5, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function5<V1, V2, V3, V4, V5, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function5<V1, V2, V3, V4, V5, R> memoizedBy(
+        Function5<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function5)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function5<V1, V2, V3, V4, V5, R> memoizedBy(
+        Function5<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -1888,11 +2269,59 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function6<V1, V2, V3, V4, V5, V6, R> & Memoized) (v1, v2, v3, v4, v5, v6) -> memo(
-          cache,
-          Arrays.asList(v1, v2, v3, v4, v5, v6),
-          () -> tryApply(v1, v2, v3, v4, v5, v6));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function6<V1, V2, V3, V4, V5, V6, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function6<V1, V2, V3, V4, V5, V6, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function6<V1, V2, V3, V4, V5, V6, R> memoizedBy(
+        Function6<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function6)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function6<V1, V2, V3, V4, V5, V6, R> memoizedBy(
+        Function6<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -2050,11 +2479,61 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function7<V1, V2, V3, V4, V5, V6, V7, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7) -> memo(
-          cache,
-          Arrays.asList(v1, v2, v3, v4, v5, v6, v7),
-          () -> tryApply(v1, v2, v3, v4, v5, v6, v7));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function7<V1, V2, V3, V4, V5, V6, V7, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function7<V1, V2, V3, V4, V5, V6, V7, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function7<V1, V2, V3, V4, V5, V6, V7, R> memoizedBy(
+        Function7<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+            ? super V7, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function7)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function7<V1, V2, V3, V4, V5, V6, V7, R> memoizedBy(
+        Function7<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+            ? super V7, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
     }
   }
 
@@ -2218,11 +2697,139 @@ public class Throwing {
       if (this instanceof Memoized) {
         return this;
       }
-      Map<Object, R> cache = new HashMap<>();
-      return (Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7, v8) -> memo(
-          cache,
-          Arrays.asList(v1, v2, v3, v4, v5, v6, v7, v8),
-          () -> tryApply(v1, v2, v3, v4, v5, v6, v7, v8));
+      return memo(this, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions, keeping at most
+     * <code>maxEntries</code> results. Least recently used results are evicted first.
+     *
+     * @param maxEntries Max number of results to keep.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memoized(int maxEntries) {
+      return memo(this, MemoCache.builder().maximumSize(maxEntries).build());
+    }
+
+    /**
+     * A function that remember/cache previous executions using the given cache. See
+     * {@link MemoCache#builder()} for size bound, expiration and refresh options.
+     *
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     * @throws IllegalStateException When this function is already memoized.
+     */
+    default Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memoized(MemoCache<Object, R> cache) {
+      return memo(this, cache);
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, instead of the whole arguments. Useful when arguments are big or
+     * expensive to compare: the cache keeps the small key only. Calls with the same key share a
+     * result.
+     *
+     * @param key Key extractor.
+     * @return A memo function.
+     */
+    default Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memoizedBy(
+        Function8<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+            ? super V7, ? super V8, ?> key) {
+      return memoBy(this, key, MemoCache.builder().build());
+    }
+
+    /**
+     * A function that remember/cache previous executions under a key derived from the
+     * arguments, using the given cache. See {@link #memoizedBy(Function8)}.
+     *
+     * @param key Key extractor.
+     * @param cache Cache for this function, must not be shared with other functions.
+     * @return A memo function.
+     */
+    default Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memoizedBy(
+        Function8<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+            ? super V7, ? super V8, ?> key,
+        MemoCache<Object, R> cache) {
+      return memoBy(this, key, cache);
+    }
+  }
+
+  /**
+   * Throwable version of {@link java.util.function.IntFunction}.
+   *
+   * The {@link #apply(int)} method throws checked exceptions using {@link #sneakyThrow(Throwable)} method.
+   *
+   * @param <R> Output type.
+   */
+  @FunctionalInterface
+  public interface IntFunction<R> extends java.util.function.IntFunction<R> {
+    /**
+     * Apply this function to the given argument and produces a result.
+     *
+     * @param value Input argument.
+     * @return Result.
+     * @throws Throwable If something goes wrong.
+     */
+    R tryApply(int value) throws Throwable;
+
+    /**
+     * Apply this function to the given argument and produces a result.
+     *
+     * @param value Input argument.
+     * @return Result.
+     */
+    @Override default R apply(int value) {
+      return fn(() -> tryApply(value));
+    }
+
+    /**
+     * A function that remember/cache previous executions. Results are kept in a primitive keyed
+     * table: the argument is never boxed and a cached call doesn't allocate.
+     *
+     * @return A memo function.
+     */
+    default IntFunction<R> memoized() {
+      return memoInt(this, new LongMemoCache<>());
+    }
+  }
+
+  /**
+   * Throwable version of {@link java.util.function.LongFunction}.
+   *
+   * The {@link #apply(long)} method throws checked exceptions using {@link #sneakyThrow(Throwable)} method.
+   *
+   * @param <R> Output type.
+   */
+  @FunctionalInterface
+  public interface LongFunction<R> extends java.util.function.LongFunction<R> {
+    /**
+     * Apply this function to the given argument and produces a result.
+     *
+     * @param value Input argument.
+     * @return Result.
+     * @throws Throwable If something goes wrong.
+     */
+    R tryApply(long value) throws Throwable;
+
+    /**
+     * Apply this function to the given argument and produces a result.
+     *
+     * @param value Input argument.
+     * @return Result.
+     */
+    @Override default R apply(long value) {
+      return fn(() -> tryApply(value));
+    }
+
+    /**
+     * A function that remember/cache previous executions. Results are kept in a primitive keyed
+     * table: the argument is never boxed and a cached call doesn't allocate.
+     *
+     * @return A memo function.
+     */
+    default LongFunction<R> memoized() {
+      return memoLong(this, new LongMemoCache<>());
     }
   }
 
@@ -2280,6 +2887,28 @@ public class Throwing {
     return fn;
   }
 
+  /**
+   * Factory method for {@link IntFunction} and {@link java.util.function.IntFunction}.
+   *
+   * @param fn Function.
+   * @param <R> Result value.
+   * @return Same function.
+   */
+  public final static <R> IntFunction<R> throwingIntFunction(IntFunction<R> fn) {
+    return fn;
+  }
+
+  /**
+   * Factory method for {@link LongFunction} and {@link java.util.function.LongFunction}.
+   *
+   * @param fn Function.
+   * @param <R> Result value.
+   * @return Same function.
+   */
+  public final static <R> LongFunction<R> throwingLongFunction(LongFunction<R> fn) {
+    return fn;
+  }
+
   public final static <V1, V2, V3, R> Function3<V1, V2, V3, R> throwingFunction(
       Function3<V1, V2, V3, R> fn) {
     return fn;
@@ -2310,6 +2939,51 @@ public class Throwing {
     return fn;
   }
 
+  /**
+   * Memoize a recursive function. The function gets its own memoized version as first argument
+   * and uses it for recursive calls, so each argument is computed once and dynamic programming
+   * style recursions run in linear time:
+   *
+   * <pre>{@code
+   *
+   *  Throwing.Function<Integer, BigInteger> fib = Throwing.memoizedRecursive((self, n) ->
+   *      n < 2 ? BigInteger.valueOf(n) : self.apply(n - 1).add(self.apply(n - 2)));
+   *
+   * }</pre>
+   *
+   * No lock is held while the function runs: other threads keep reading and computing other
+   * arguments, and only wait when they ask for an argument being computed. A recursive call with
+   * an argument already being computed by the same thread fails with
+   * {@link IllegalStateException} instead of looping forever.
+   *
+   * @param fn Recursive function.
+   * @param <V> Input value.
+   * @param <R> Result value.
+   * @return A memo function.
+   */
+  public final static <V, R> Function<V, R> memoizedRecursive(
+      Function2<Function<V, R>, V, R> fn) {
+    return memoizedRecursive(fn, MemoCache.builder().build());
+  }
+
+  /**
+   * Memoize a recursive function using the given cache. See
+   * {@link #memoizedRecursive(Function2)}.
+   *
+   * @param fn Recursive function.
+   * @param cache Cache for this function, must not be shared with other functions.
+   * @param <V> Input value.
+   * @param <R> Result value.
+   * @return A memo function.
+   */
+  public final static <V, R> Function<V, R> memoizedRecursive(
+      Function2<Function<V, R>, V, R> fn, MemoCache<Object, R> cache) {
+    Objects.requireNonNull(fn, "Function required.");
+    Self<V, R> self = new Self<>();
+    self.fn = memo(value -> fn.tryApply(self.fn, value), cache);
+    return self.fn;
+  }
+
   public final static <V> Consumer<V> throwingConsumer(Consumer<V> action) {
     return action;
   }
@@ -2530,14 +3204,370 @@ public class Throwing {
     }
   }
 
-  private final static <R> R memo(Map<Object, R> cache, List<Object> key, Supplier<R> fn) {
-    synchronized (cache) {
-      R value = cache.get(key);
-      if (value == null) {
-        value = fn.get();
-        cache.put(key, value);
+  @SuppressWarnings("unchecked")
+  private static <V, R> Function<V, CompletableFuture<R>> memoAsync(Function<V, R> fn,
+      MemoCache<Object, CompletableFuture<R>> cache, Executor executor) {
+    Objects.requireNonNull(executor, "Executor required.");
+    Function<Object, CompletableFuture<R>> loader = key -> {
+      CompletableFuture<R> future = new CompletableFuture<>();
+      try {
+        executor.execute(() -> {
+          try {
+            future.complete(fn.tryApply((V) MemoKey.value(key)));
+          } catch (Throwable x) {
+            future.completeExceptionally(x);
+          }
+        });
+      } catch (RejectedExecutionException x) {
+        future.completeExceptionally(x);
+      }
+      future.whenComplete((value, x) -> {
+        if (x != null) {
+          cache.invalidate(key, future);
+        }
+      });
+      return future;
+    };
+    return value -> {
+      Object key = MemoKey.of(value);
+      CompletableFuture<R> future = cache.get(key, loader);
+      // failed before it was cached
+      if (future.isCompletedExceptionally()) {
+        cache.invalidate(key, future);
+      }
+      return future;
+    };
+  }
+
+  private static <V, R> MemoizedFunction<V, R> memoBy(Function<V, R> fn,
+      Function<? super V, ?> key, MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return new MemoFunction<>(fn, key, cache);
+  }
+
+  private static <V1, V2, R> Function2<V1, V2, R> memoBy(
+      Function2<V1, V2, R> fn,
+      Function2<? super V1, ? super V2, ?> key, MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function2<V1, V2, R> & Memoized) (v1, v2) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null ? cache.get(k, ignored -> fn.tryApply(v1, v2)) : value;
+    };
+  }
+
+  private static <V1, V2, V3, R> Function3<V1, V2, V3, R> memoBy(
+      Function3<V1, V2, V3, R> fn,
+      Function3<? super V1, ? super V2, ? super V3, ?> key, MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function3<V1, V2, V3, R> & Memoized) (v1, v2, v3) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3)) : value;
+    };
+  }
+
+  private static <V1, V2, V3, V4, R> Function4<V1, V2, V3, V4, R> memoBy(
+      Function4<V1, V2, V3, V4, R> fn,
+      Function4<? super V1, ? super V2, ? super V3, ? super V4, ?> key,
+      MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function4<V1, V2, V3, V4, R> & Memoized) (v1, v2, v3, v4) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3, v4));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3, v4)) : value;
+    };
+  }
+
+  private static <V1, V2, V3, V4, V5, R> Function5<V1, V2, V3, V4, V5, R> memoBy(
+      Function5<V1, V2, V3, V4, V5, R> fn,
+      Function5<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ?> key,
+      MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function5<V1, V2, V3, V4, V5, R> & Memoized) (v1, v2, v3, v4, v5) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3, v4, v5));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3, v4, v5)) : value;
+    };
+  }
+
+  private static <V1, V2, V3, V4, V5, V6, R> Function6<V1, V2, V3, V4, V5, V6, R> memoBy(
+      Function6<V1, V2, V3, V4, V5, V6, R> fn,
+      Function6<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6, ?> key,
+      MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function6<V1, V2, V3, V4, V5, V6, R> & Memoized) (v1, v2, v3, v4, v5, v6) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3, v4, v5, v6));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3, v4, v5, v6)) : value;
+    };
+  }
+
+  private static <V1, V2, V3, V4, V5, V6, V7, R> Function7<V1, V2, V3, V4, V5, V6, V7, R> memoBy(
+      Function7<V1, V2, V3, V4, V5, V6, V7, R> fn,
+      Function7<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+          ? super V7, ?> key,
+      MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function7<V1, V2, V3, V4, V5, V6, V7, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3, v4, v5, v6, v7));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null
+          ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3, v4, v5, v6, v7))
+          : value;
+    };
+  }
+
+  private static <V1, V2, V3, V4, V5, V6, V7, V8, R> Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memoBy(
+      Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> fn,
+      Function8<? super V1, ? super V2, ? super V3, ? super V4, ? super V5, ? super V6,
+          ? super V7, ? super V8, ?> key,
+      MemoCache<Object, R> cache) {
+    Objects.requireNonNull(key, "Key extractor required.");
+    return (Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7, v8) -> {
+      Object k = MemoKey.of(key.tryApply(v1, v2, v3, v4, v5, v6, v7, v8));
+      // the loader captures the arguments, create it on misses only
+      R value = cache.getFresh(k);
+      return value == null
+          ? cache.get(k, ignored -> fn.tryApply(v1, v2, v3, v4, v5, v6, v7, v8))
+          : value;
+    };
+  }
+
+  private static <V, R> MemoizedFunction<V, R> memo(Function<V, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    return new MemoFunction<>(fn, null, cache);
+  }
+
+  private static IllegalStateException alreadyMemoized() {
+    return new IllegalStateException(
+        "Function is already memoized, memoize the original function instead");
+  }
+
+  /**
+   * Singleton supplier backed by a cache with a single entry.
+   */
+  private static final class MemoSingleton<V> implements Singleton<V>, Memoized {
+    private final MemoCache<Object, V> cache;
+
+    private final Function<Object, V> loader;
+
+    MemoSingleton(Supplier<V> fn, MemoCache<Object, V> cache) {
+      this.cache = Objects.requireNonNull(cache, "Cache required.");
+      this.loader = key -> fn.tryGet();
+    }
+
+    @Override public V tryGet() {
+      return cache.get(MemoKey.NONE, loader);
+    }
+
+    @Override public void invalidate() {
+      cache.invalidate(MemoKey.NONE);
+    }
+
+    @Override public void refresh() {
+      cache.refresh(MemoKey.NONE, loader);
+    }
+  }
+
+  /**
+   * Memoized single argument function, keyed by the argument or by a derived key.
+   */
+  /** Memoized recursive function, referenced by its own body. */
+  private static final class Self<V, R> {
+    Function<V, R> fn;
+  }
+
+  private static final class MemoFunction<V, R> implements MemoizedFunction<V, R>, Memoized {
+    private final Function<V, R> fn;
+
+    /** Key extractor or null when the argument is the key. */
+    private final Function<? super V, ?> key;
+
+    private final MemoCache<Object, R> cache;
+
+    private final Function<Object, R> loader;
+
+    @SuppressWarnings("unchecked")
+    MemoFunction(Function<V, R> fn, Function<? super V, ?> key, MemoCache<Object, R> cache) {
+      this.fn = fn;
+      this.key = key;
+      this.cache = cache;
+      this.loader = k -> fn.tryApply((V) MemoKey.value(k));
+    }
+
+    @Override public R tryApply(V value) throws Throwable {
+      if (key == null) {
+        return cache.get(MemoKey.of(value), loader);
       }
-      return value;
+      Object k = MemoKey.of(key.tryApply(value));
+      R result = cache.getFresh(k);
+      return result == null ? cache.get(k, ignored -> fn.tryApply(value)) : result;
+    }
+
+    @Override public MemoizedFunction<V, R> preload(Collection<? extends V> values) {
+      load(values);
+      return this;
+    }
+
+    @Override public CompletableFuture<MemoizedFunction<V, R>> preloadAsync(
+        Collection<? extends V> values, int parallelism) {
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      CompletableFuture<MemoizedFunction<V, R>> future = CompletableFuture
+          .supplyAsync(() -> {
+            load(values);
+            return this;
+          }, pool);
+      future.whenComplete((result, x) -> pool.shutdown());
+      return future;
+    }
+
+    /** Load missing results in parallel, present ones are skipped without a hit. */
+    private void load(Collection<? extends V> values) {
+      new HashSet<>(values).parallelStream().forEach(value -> {
+        Object k = MemoKey.of(key == null ? value : key.apply(value));
+        if (cache.getIfPresent(k) == null) {
+          cache.get(k, key == null ? loader : ignored -> fn.tryApply(value));
+        }
+      });
     }
   }
+
+  private static <R> IntFunction<R> memoInt(IntFunction<R> fn, LongMemoCache<R> cache) {
+    if (fn instanceof Memoized) {
+      return fn;
+    }
+    Function<Long, R> loader = key -> fn.tryApply(key.intValue());
+    return (IntFunction<R> & Memoized) value -> {
+      R result = cache.getIfPresent(value);
+      return result == null ? cache.get((long) value, loader) : result;
+    };
+  }
+
+  private static <R> LongFunction<R> memoLong(LongFunction<R> fn, LongMemoCache<R> cache) {
+    if (fn instanceof Memoized) {
+      return fn;
+    }
+    Function<Long, R> loader = fn::tryApply;
+    return (LongFunction<R> & Memoized) value -> {
+      R result = cache.getIfPresent(value);
+      return result == null ? cache.get(value, loader) : result;
+    };
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, R> Function2<V1, V2, R> memo(
+      Function2<V1, V2, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1));
+    };
+    return (Function2<V1, V2, R> & Memoized) (v1, v2) -> cache.get(MemoKey.of(v1, v2), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, R> Function3<V1, V2, V3, R> memo(
+      Function3<V1, V2, V3, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2));
+    };
+    return (Function3<V1, V2, V3, R> & Memoized) (v1, v2, v3) -> cache
+        .get(MemoKey.of(v1, v2, v3), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, V4, R> Function4<V1, V2, V3, V4, R> memo(
+      Function4<V1, V2, V3, V4, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2), (V4) k.get(3));
+    };
+    return (Function4<V1, V2, V3, V4, R> & Memoized) (v1, v2, v3, v4) -> cache
+        .get(MemoKey.of(v1, v2, v3, v4), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, V4, V5, R> Function5<V1, V2, V3, V4, V5, R> memo(
+      Function5<V1, V2, V3, V4, V5, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2), (V4) k.get(3), (V5) k.get(4));
+    };
+    return (Function5<V1, V2, V3, V4, V5, R> & Memoized) (v1, v2, v3, v4, v5) -> cache
+        .get(MemoKey.of(v1, v2, v3, v4, v5), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, V4, V5, V6, R> Function6<V1, V2, V3, V4, V5, V6, R> memo(
+      Function6<V1, V2, V3, V4, V5, V6, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2), (V4) k.get(3), (V5) k.get(4),
+          (V6) k.get(5));
+    };
+    return (Function6<V1, V2, V3, V4, V5, V6, R> & Memoized) (v1, v2, v3, v4, v5, v6) -> cache
+        .get(MemoKey.of(v1, v2, v3, v4, v5, v6), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, V4, V5, V6, V7, R> Function7<V1, V2, V3, V4, V5, V6, V7, R> memo(
+      Function7<V1, V2, V3, V4, V5, V6, V7, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2), (V4) k.get(3), (V5) k.get(4),
+          (V6) k.get(5), (V7) k.get(6));
+    };
+    return (Function7<V1, V2, V3, V4, V5, V6, V7, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7) -> cache
+        .get(MemoKey.of(v1, v2, v3, v4, v5, v6, v7), loader);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V1, V2, V3, V4, V5, V6, V7, V8, R> Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> memo(
+      Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> fn,
+      MemoCache<Object, R> cache) {
+    if (fn instanceof Memoized) {
+      throw alreadyMemoized();
+    }
+    Function<Object, R> loader = key -> {
+      MemoKey k = (MemoKey) key;
+      return fn.tryApply((V1) k.get(0), (V2) k.get(1), (V3) k.get(2), (V4) k.get(3), (V5) k.get(4),
+          (V6) k.get(5), (V7) k.get(6), (V8) k.get(7));
+    };
+    return (Function8<V1, V2, V3, V4, V5, V6, V7, V8, R> & Memoized) (v1, v2, v3, v4, v5, v6, v7, v8) -> cache
+        .get(MemoKey.of(v1, v2, v3, v4, v5, v6, v7, v8), loader);
+  }
 }
@@ -1,8 +1,21 @@
 package org.jooby.funzy;
 
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -51,7 +64,7 @@ public abstract class Try {
       if (isSuccess()) {
         return get();
       }
-      throw Throwing.sneakyThrow(provider.apply(getCause().get()));
+      throw Throwing.sneakyThrow(provider.apply(cause()));
     }
 
     /**
@@ -77,8 +90,9 @@ public abstract class Try {
      */
     public Value<V> onComplete(final Throwing.Consumer2<V, Throwable> action) {
       try {
-        V value = isSuccess() ? get() : null;
-        action.accept(value, getCause().orElse(null));
+        Throwable cause = cause();
+        V value = cause == null ? get() : null;
+        action.accept(value, cause);
         return this;
       } catch (Throwable x) {
         return (Value<V>) failure(x);
@@ -141,16 +155,15 @@ public abstract class Try {
      */
     public <X extends Throwable> Value<V> recoverWith(Class<X> exception,
       Throwing.Function<X, Value<V>> fn) {
-      return (Value<V>) getCause()
-        .filter(exception::isInstance)
-        .map(x -> {
-          try {
-            return fn.apply((X) x);
-          } catch (Throwable ex) {
-            return failure(ex);
-          }
-        })
-        .orElse(this);
+      Throwable x = cause();
+      if (x == null || !exception.isInstance(x)) {
+        return this;
+      }
+      try {
+        return fn.apply((X) x);
+      } catch (Throwable ex) {
+        return new Failure<>(ex);
+      }
     }
 
     /**
@@ -173,7 +186,11 @@ public abstract class Try {
      * @return This try on success, a new success try from recover or a failure try in case of exception.
      */
     public <X extends Throwable> Value<V> recover(Class<X> exception, V value) {
-      return recoverWith(exception, x -> Try.success(value));
+      Throwable x = cause();
+      if (x == null || !exception.isInstance(x)) {
+        return this;
+      }
+      return Try.success(value);
     }
 
     /**
@@ -186,7 +203,15 @@ public abstract class Try {
      * @return This try on success, a new success try from recover or a failure try in case of exception.
      */
     public <X extends Throwable> Value<V> recover(Class<X> exception, Throwing.Function<X, V> fn) {
-      return recoverWith(exception, x -> Try.apply(() -> fn.apply(x)));
+      Throwable x = cause();
+      if (x == null || !exception.isInstance(x)) {
+        return this;
+      }
+      try {
+        return Try.success(fn.apply((X) x));
+      } catch (Throwable ex) {
+        return new Failure<>(ex);
+      }
     }
 
     /**
@@ -215,7 +240,14 @@ public abstract class Try {
      * @return A new try value for success or failure.
      */
     public <T> Value<T> map(Throwing.Function<V, T> mapper) {
-      return flatMap(v -> new Success<>(mapper.apply(v)));
+      if (isFailure()) {
+        return (Value<T>) this;
+      }
+      try {
+        return Try.success(mapper.apply(get()));
+      } catch (Throwable x) {
+        return new Failure<>(x);
+      }
     }
 
     /**
@@ -251,6 +283,9 @@ public abstract class Try {
   }
 
   private static class Success<V> extends Value<V> {
+    /** Shared by void and null results. */
+    private static final Success<Object> NULL = new Success<>(null);
+
     private final V value;
 
     public Success(V value) {
@@ -264,6 +299,10 @@ public abstract class Try {
     @Override public Optional<Throwable> getCause() {
       return Optional.empty();
     }
+
+    @Override Throwable cause() {
+      return null;
+    }
   }
 
   private static class Failure<V> extends Value<V> {
@@ -280,6 +319,544 @@ public abstract class Try {
     @Override public Optional<Throwable> getCause() {
       return Optional.of(x);
     }
+
+    @Override Throwable cause() {
+      return x;
+    }
+  }
+
+  /**
+   * Lightweight failure for expected errors on hot paths, like invalid input on parsing. It doesn't
+   * fill in a stack trace nor record suppressed exceptions, so creating one costs about the same as
+   * a success value. Instances are immutable and can be preallocated and shared:
+   *
+   * <pre>{@code
+   *
+   *   static final Try.Failed BAD_NUMBER = new Try.Failed("bad-number", "Not a number");
+   *
+   *   Try.apply(() -> {
+   *     if (!isNumber(text)) {
+   *       throw BAD_NUMBER;
+   *     }
+   *     return Integer.parseInt(text);
+   *   })
+   *   .recover(Try.Failed.class, x -> 0);
+   * }</pre>
+   *
+   * A preallocated instance also reuses its failure try value, {@link Try#failure(Throwable)}
+   * doesn't allocate. Use regular exceptions for unexpected errors, where the stack trace is worth
+   * the price.
+   */
+  public static class Failed extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String code;
+
+    /** Failure try returned by {@link Try#failure(Throwable)}, created on first use. */
+    private transient Value<Throwable> value;
+
+    /**
+     * Creates a new lightweight failure.
+     *
+     * @param code Error code or null.
+     * @param message Error message.
+     */
+    public Failed(String code, String message) {
+      super(message, null, false, false);
+      this.code = code;
+    }
+
+    /**
+     * Creates a new lightweight failure.
+     *
+     * @param message Error message.
+     */
+    public Failed(String message) {
+      this(null, message);
+    }
+
+    /**
+     * Error code or null.
+     *
+     * @return Error code or null.
+     */
+    public String getCode() {
+      return code;
+    }
+
+    @Override public String toString() {
+      String message = getLocalizedMessage();
+      String prefix = code == null ? getClass().getName() : getClass().getName() + "[" + code + "]";
+      return message == null ? prefix : prefix + ": " + message;
+    }
+  }
+
+  /**
+   * Asynchronous try, created by {@link Try#async(Throwing.Supplier, Executor)} or
+   * {@link Try#async(CompletionStage)}:
+   *
+   * <pre>{@code
+   *
+   *   Try.async(() -> client.fetch(id), executor)
+   *     .map(response -> response.body())
+   *     .unwrap(InvocationTargetException.class)
+   *     .recover(IOException.class, x -> fallback)
+   *     .onComplete((body, x) -> ...);
+   * }</pre>
+   *
+   * Combinators never block: each one registers a callback and returns right away. Callbacks run
+   * on the thread completing the previous step, or on the caller thread when it is already
+   * complete, so keep them short and use {@link #flatMap(Throwing.Function)} for blocking work.
+   * Callbacks see the original exception, never a {@link CompletionException}.
+   *
+   * @param <V> Value type.
+   */
+  public static final class Async<V> {
+
+    private final CompletableFuture<V> future;
+
+    private Async(CompletableFuture<V> future) {
+      this.future = future;
+    }
+
+    /**
+     * Map the success value.
+     *
+     * @param mapper Mapper.
+     * @param <T> New type.
+     * @return A new async try.
+     */
+    public <T> Async<T> map(Throwing.Function<V, T> mapper) {
+      return next((value, x, next) -> {
+        if (x == null) {
+          next.complete(mapper.apply(value));
+        } else {
+          next.completeExceptionally(x);
+        }
+      });
+    }
+
+    /**
+     * Flat map the success value.
+     *
+     * @param mapper Mapper.
+     * @param <T> New type.
+     * @return A new async try.
+     */
+    public <T> Async<T> flatMap(Throwing.Function<V, Async<T>> mapper) {
+      return next((value, x, next) -> {
+        if (x == null) {
+          mapper.apply(value).future.whenComplete((result, y) -> complete(next, result, y));
+        } else {
+          next.completeExceptionally(x);
+        }
+      });
+    }
+
+    /**
+     * Recover from failure. The recover function will be executed in case of failure.
+     *
+     * @param fn Recover function.
+     * @return A new async try.
+     */
+    public Async<V> recover(Throwing.Function<Throwable, V> fn) {
+      return recover(Throwable.class, fn);
+    }
+
+    /**
+     * Recover from failure if and only if the exception is a subclass of the given exception
+     * filter.
+     *
+     * @param exception Exception filter.
+     * @param value Recover value.
+     * @param <X> Exception type.
+     * @return A new async try.
+     */
+    public <X extends Throwable> Async<V> recover(Class<X> exception, V value) {
+      return recover(exception, x -> value);
+    }
+
+    /**
+     * Recover from failure if and only if the exception is a subclass of the given exception
+     * filter.
+     *
+     * @param exception Exception filter.
+     * @param fn Recover function.
+     * @param <X> Exception type.
+     * @return A new async try.
+     */
+    public <X extends Throwable> Async<V> recover(Class<X> exception,
+      Throwing.Function<X, V> fn) {
+      return next((value, x, next) -> {
+        if (exception.isInstance(x)) {
+          next.complete(fn.apply((X) x));
+        } else {
+          complete(next, value, x);
+        }
+      });
+    }
+
+    /**
+     * Recover from failure with another async try.
+     *
+     * @param fn Recover function.
+     * @return A new async try.
+     */
+    public Async<V> recoverWith(Throwing.Function<Throwable, Async<V>> fn) {
+      return recoverWith(Throwable.class, fn);
+    }
+
+    /**
+     * Recover from failure with another async try, if and only if the exception is a subclass of
+     * the given exception filter.
+     *
+     * @param exception Exception filter.
+     * @param fn Recover function.
+     * @param <X> Exception type.
+     * @return A new async try.
+     */
+    public <X extends Throwable> Async<V> recoverWith(Class<X> exception,
+      Throwing.Function<X, Async<V>> fn) {
+      return next((value, x, next) -> {
+        if (exception.isInstance(x)) {
+          fn.apply((X) x).future.whenComplete((result, y) -> complete(next, result, y));
+        } else {
+          complete(next, value, x);
+        }
+      });
+    }
+
+    /**
+     * Run the given action once complete, works like a finally clause. Exception and value might
+     * be null. Exception will be null in case of success.
+     *
+     * @param action Finally action.
+     * @return A new async try, failed if the action fails.
+     */
+    public Async<V> onComplete(Throwing.Consumer2<V, Throwable> action) {
+      return next((value, x, next) -> {
+        action.accept(value, x);
+        complete(next, value, x);
+      });
+    }
+
+    /**
+     * Run the given action once complete, works like a finally clause.
+     *
+     * @param action Finally action.
+     * @return A new async try, failed if the action fails.
+     */
+    public Async<V> onComplete(Throwing.Runnable action) {
+      return onComplete((value, x) -> action.run());
+    }
+
+    /**
+     * Run the given action if and only if this is a success.
+     *
+     * @param action Success listener.
+     * @return A new async try, failed if the action fails.
+     */
+    public Async<V> onSuccess(Throwing.Consumer<V> action) {
+      return onComplete((value, x) -> {
+        if (x == null) {
+          action.accept(value);
+        }
+      });
+    }
+
+    /**
+     * Run the given action if and only if this is a failure.
+     *
+     * @param action Failure listener.
+     * @return A new async try, failed if the action fails.
+     */
+    public Async<V> onFailure(Throwing.Consumer<Throwable> action) {
+      return onComplete((value, x) -> {
+        if (x != null) {
+          action.accept(x);
+        }
+      });
+    }
+
+    /**
+     * In case of failure unwrap the exception provided by calling {@link Throwable#getCause()}.
+     *
+     * @param type Exception filter.
+     * @return A new async try.
+     */
+    public Async<V> unwrap(Class<? extends Throwable> type) {
+      return next((value, x, next) -> {
+        if (type.isInstance(x) && x.getCause() != null) {
+          next.completeExceptionally(x.getCause());
+        } else {
+          complete(next, value, x);
+        }
+      });
+    }
+
+    /**
+     * In case of failure wrap the exception to something else.
+     *
+     * @param wrapper Exception mapper.
+     * @return A new async try.
+     */
+    public Async<V> wrap(Throwing.Function<Throwable, Throwable> wrapper) {
+      return wrap(Throwable.class, wrapper);
+    }
+
+    /**
+     * In case of failure wrap an exception matching the given type to something else.
+     *
+     * @param type Exception filter.
+     * @param wrapper Exception mapper.
+     * @param <X> Exception type.
+     * @return A new async try.
+     */
+    public <X extends Throwable> Async<V> wrap(Class<? extends X> type,
+      Throwing.Function<X, Throwable> wrapper) {
+      return next((value, x, next) -> {
+        if (type.isInstance(x)) {
+          next.completeExceptionally(wrapper.apply((X) x));
+        } else {
+          complete(next, value, x);
+        }
+      });
+    }
+
+    /**
+     * True once complete, successfully or not.
+     *
+     * @return True once complete.
+     */
+    public boolean isDone() {
+      return future.isDone();
+    }
+
+    /**
+     * Wait for completion. This is the only blocking method.
+     *
+     * @return The try value. A failure with {@link InterruptedException} if the current thread is
+     *     interrupted while waiting.
+     */
+    public Value<V> join() {
+      try {
+        return success(future.get());
+      } catch (ExecutionException x) {
+        return new Failure<>(cause(x));
+      } catch (InterruptedException x) {
+        Thread.currentThread().interrupt();
+        return new Failure<>(x);
+      } catch (Throwable x) {
+        return new Failure<>(x);
+      }
+    }
+
+    /**
+     * The backing future, without copying. Failures complete it with the original exception.
+     *
+     * @return The backing future.
+     */
+    public CompletableFuture<V> toCompletableFuture() {
+      return future;
+    }
+
+    private <T> Async<T> next(Throwing.Consumer3<V, Throwable, CompletableFuture<T>> step) {
+      CompletableFuture<T> next = new CompletableFuture<>();
+      future.whenComplete((value, x) -> {
+        try {
+          step.accept(value, cause(x), next);
+        } catch (Throwable ex) {
+          next.completeExceptionally(ex);
+        }
+      });
+      return new Async<>(next);
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, T value, Throwable x) {
+      if (x == null) {
+        future.complete(value);
+      } else {
+        future.completeExceptionally(cause(x));
+      }
+    }
+
+    /**
+     * Original exception of a dependent future, which wraps it into a CompletionException.
+     */
+    private static Throwable cause(Throwable x) {
+      if ((x instanceof CompletionException || x instanceof ExecutionException)
+        && x.getCause() != null) {
+        return x.getCause();
+      }
+      return x;
+    }
+  }
+
+  /**
+   * Structured scope for concurrent tasks, see {@link Try#scope(Throwing.Function)}.
+   */
+  public static final class Scope {
+
+    /** Forked task, from new to running (its thread), done or cancelled. */
+    private static final class Task extends AtomicReference<Object> {
+      private static final long serialVersionUID = 1L;
+
+      static final Object DONE = new Object();
+
+      static final Object CANCELLING = new Object();
+
+      static final Object CANCELLED = new Object();
+
+      final CompletableFuture<Object> future = new CompletableFuture<>();
+
+      /** Exception thrown by the task, even after it was cancelled. */
+      volatile Throwable error;
+
+      /** Completed once the task stopped running, or never will. */
+      final CountDownLatch finished = new CountDownLatch(1);
+
+      void cancel() {
+        Object state = get();
+        if (state instanceof Thread) {
+          if (compareAndSet(state, CANCELLING)) {
+            ((Thread) state).interrupt();
+            set(CANCELLED);
+          }
+        } else if (state == null && compareAndSet(null, CANCELLED)) {
+          finished.countDown();
+        }
+        future.completeExceptionally(new CancellationException());
+      }
+    }
+
+    private final Executor executor;
+
+    /** True when a task failure fails the scope and cancels the other tasks. */
+    private final boolean failFast;
+
+    private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private Scope(Executor executor, boolean failFast) {
+      this.executor = executor;
+      this.failFast = failFast;
+    }
+
+    /**
+     * Run the given value provider concurrently, on a new virtual thread on JDK 21+. If it fails
+     * the scope fails and the other tasks are cancelled.
+     *
+     * @param fn Value provider.
+     * @param <V> Value type.
+     * @return An async try for the task result.
+     */
+    public <V> Async<V> fork(Throwing.Supplier<? extends V> fn) {
+      Task task = new Task();
+      tasks.add(task);
+      if (failFast && failure.get() != null) {
+        task.cancel();
+      } else {
+        try {
+          executor.execute(() -> run(task, fn));
+        } catch (Throwable x) {
+          task.finished.countDown();
+          failed(task, x);
+        }
+      }
+      return new Async<>((CompletableFuture<V>) task.future);
+    }
+
+    private void run(Task task, Throwing.Supplier<?> fn) {
+      Thread thread = Thread.currentThread();
+      if (!task.compareAndSet(null, thread)) {
+        // cancelled before it started
+        return;
+      }
+      try {
+        task.future.complete(fn.get());
+      } catch (Throwable x) {
+        // a task cancelled by the scope didn't fail on its own, cancel() completed its future
+        if (task.get() == thread) {
+          failed(task, x);
+        }
+      } finally {
+        while (!task.compareAndSet(thread, Task.DONE)) {
+          if (task.get() == Task.CANCELLED) {
+            // don't leak the interrupt to the next task of a pooled thread
+            Thread.interrupted();
+            break;
+          }
+          Thread.yield();
+        }
+        task.finished.countDown();
+      }
+    }
+
+    private void failed(Task task, Throwable x) {
+      task.error = x;
+      if (task.future.completeExceptionally(x) && failure.compareAndSet(null, x) && failFast) {
+        cancel();
+      }
+    }
+
+    private void cancel() {
+      for (Task task : tasks) {
+        task.cancel();
+      }
+    }
+
+    /**
+     * Wait for every task.
+     *
+     * @return First failure or null.
+     */
+    private Throwable join() {
+      boolean interrupted = false;
+      // tasks forked by a task are queued before it finishes, so the iteration sees them
+      for (Task task : tasks) {
+        while (true) {
+          try {
+            task.finished.await();
+            break;
+          } catch (InterruptedException x) {
+            // tasks never outlive the scope, cancel them and keep waiting
+            interrupted = true;
+            if (failure.compareAndSet(null, x)) {
+              cancel();
+            }
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+      return failure.get();
+    }
+
+    /**
+     * Cause of a failed scope, once every task is done. When other tasks failed too, the first
+     * failure is wrapped into a {@link CompletionException} with the others as suppressed
+     * exceptions: task exceptions might be shared and are never modified.
+     */
+    private Throwable cause(Throwable first) {
+      List<Throwable> others = new ArrayList<>();
+      for (Task task : tasks) {
+        Throwable x = task.error;
+        if (x != null && x != first && !others.contains(x)) {
+          others.add(x);
+        }
+      }
+      if (others.isEmpty()) {
+        return first;
+      }
+      CompletionException cause = new CompletionException(first);
+      for (Throwable x : others) {
+        cause.addSuppressed(x);
+      }
+      return cause;
+    }
   }
 
   /**
@@ -304,14 +881,14 @@ public abstract class Try {
 
       @Override public void close() throws Exception {
         try {
-          Optional.ofNullable(resource)
-            .ifPresent(Throwing.throwingConsumer(AutoCloseable::close));
+          if (resource != null) {
+            resource.close();
+          }
         } finally {
           if (parent instanceof ProxyCloseable) {
             ((ProxyCloseable) parent).close();
-          } else {
-            Optional.ofNullable(parentResource)
-              .ifPresent(Throwing.throwingConsumer(AutoCloseable::close));
+          } else if (parentResource != null) {
+            parentResource.close();
           }
         }
       }
@@ -666,7 +1243,7 @@ public abstract class Try {
    * @return A new success value.
    */
   public final static <V> Value<V> success(V value) {
-    return new Success<>(value);
+    return value == null ? (Value<V>) Success.NULL : new Success<>(value);
   }
 
   /**
@@ -676,9 +1253,42 @@ public abstract class Try {
    * @return A new failure value.
    */
   public final static Value<Throwable> failure(Throwable x) {
+    if (x instanceof Failed) {
+      Failed failed = (Failed) x;
+      // racy but safe, a failure try is immutable
+      Value<Throwable> value = failed.value;
+      if (value == null) {
+        value = new Failure<>(x);
+        failed.value = value;
+      }
+      return value;
+    }
     return new Failure<>(x);
   }
 
+  /**
+   * Get a new lightweight failure value, see {@link Failed}.
+   *
+   * @param message Error message.
+   * @param <V> Value type.
+   * @return A new failure value.
+   */
+  public final static <V> Value<V> failed(String message) {
+    return new Failure<>(new Failed(message));
+  }
+
+  /**
+   * Get a new lightweight failure value, see {@link Failed}.
+   *
+   * @param code Error code.
+   * @param message Error message.
+   * @param <V> Value type.
+   * @return A new failure value.
+   */
+  public final static <V> Value<V> failed(String code, String message) {
+    return new Failure<>(new Failed(code, message));
+  }
+
   /**
    * Creates a new try from given value provider.
    *
@@ -688,9 +1298,9 @@ public abstract class Try {
    */
   public static <V> Value<V> apply(Throwing.Supplier<? extends V> fn) {
     try {
-      return new Success<>(fn.get());
+      return success(fn.get());
     } catch (Throwable x) {
-      return new Failure(x);
+      return new Failure<>(x);
     }
   }
 
@@ -705,6 +1315,243 @@ public abstract class Try {
     return apply(fn::call);
   }
 
+  /**
+   * Run the given value provider on the given executor.
+   *
+   * @param fn Value provider.
+   * @param executor Executor.
+   * @param <V> Value type.
+   * @return A new async try, failed if the executor rejects the task.
+   */
+  public static <V> Async<V> async(Throwing.Supplier<? extends V> fn, Executor executor) {
+    CompletableFuture<V> future = new CompletableFuture<>();
+    try {
+      executor.execute(() -> {
+        try {
+          future.complete(fn.get());
+        } catch (Throwable x) {
+          future.completeExceptionally(x);
+        }
+      });
+    } catch (Throwable x) {
+      future.completeExceptionally(x);
+    }
+    return new Async<>(future);
+  }
+
+  /**
+   * Creates an async try from a completion stage. A {@link CompletableFuture} is used as is,
+   * without copying.
+   *
+   * @param stage Completion stage.
+   * @param <V> Value type.
+   * @return A new async try.
+   */
+  public static <V> Async<V> async(CompletionStage<V> stage) {
+    if (stage instanceof CompletableFuture) {
+      return new Async<>((CompletableFuture<V>) stage);
+    }
+    CompletableFuture<V> future = new CompletableFuture<>();
+    stage.whenComplete((value, x) -> Async.complete(future, value, x));
+    return new Async<>(future);
+  }
+
+  /**
+   * Run the given value provider on a new virtual thread on JDK 21+, or on a pool of daemon
+   * threads on older JDKs.
+   *
+   * @param fn Value provider.
+   * @param <V> Value type.
+   * @return A new async try.
+   */
+  public static <V> Async<V> fork(Throwing.Supplier<? extends V> fn) {
+    return async(fn, VirtualThreads.executor());
+  }
+
+  /**
+   * Run concurrent tasks inside a structured scope, one virtual thread per task on JDK 21+:
+   *
+   * <pre>{@code
+   *
+   *   Try.Value<Page> page = Try.scope(scope -> {
+   *     Try.Async<User> user = scope.fork(() -> users.find(id));
+   *     Try.Async<List<Order>> orders = scope.fork(() -> orders.list(id));
+   *     return new Page(user.join().get(), orders.join().get());
+   *   });
+   * }</pre>
+   *
+   * When a task fails, the other tasks are cancelled (interrupted) and the scope fails with the
+   * task exception. If other tasks failed on their own meanwhile, the scope fails with a
+   * {@link CompletionException} instead: its cause is the first failure and the others are
+   * suppressed exceptions. Task exceptions are never modified, cancelled tasks are not failures.
+   * Tasks never outlive the scope: it waits for all of them, even when the body fails.
+   *
+   * @param body Scope body.
+   * @param <V> Value type.
+   * @return A new success try or failure try in case of exception.
+   */
+  public static <V> Value<V> scope(Throwing.Function<Scope, V> body) {
+    return scope(VirtualThreads.executor(), body);
+  }
+
+  /**
+   * Run concurrent tasks inside a structured scope, see {@link #scope(Throwing.Function)}.
+   *
+   * @param executor Executor for tasks.
+   * @param body Scope body.
+   * @param <V> Value type.
+   * @return A new success try or failure try in case of exception.
+   */
+  public static <V> Value<V> scope(Executor executor, Throwing.Function<Scope, V> body) {
+    Scope scope = new Scope(executor, true);
+    V value = null;
+    try {
+      value = body.apply(scope);
+    } catch (Throwable x) {
+      if (scope.failure.compareAndSet(null, x)) {
+        scope.cancel();
+      }
+    }
+    Throwable x = scope.join();
+    return x == null ? success(value) : new Failure<>(scope.cause(x));
+  }
+
+  /**
+   * Run the given value providers concurrently, one virtual thread per task on JDK 21+, and
+   * collect their values. Fails fast: on the first failure the other tasks are cancelled, see
+   * {@link #scope(Throwing.Function)}.
+   *
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return A new success try with values in task order, or failure try.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<List<V>> all(Throwing.Supplier<? extends V>... tasks) {
+    return collect(VirtualThreads.executor(), Arrays.asList(tasks));
+  }
+
+  /**
+   * Run the given value providers concurrently and collect their values, see
+   * {@link #all(Throwing.Supplier[])}.
+   *
+   * @param executor Executor for tasks.
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return A new success try with values in task order, or failure try.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<List<V>> all(Executor executor, Throwing.Supplier<? extends V>... tasks) {
+    return collect(executor, Arrays.asList(tasks));
+  }
+
+  private static <V> Value<List<V>> collect(Executor executor,
+    List<Throwing.Supplier<? extends V>> tasks) {
+    return scope(executor, scope -> {
+      List<Async<? extends V>> results = new ArrayList<>(tasks.size());
+      for (Throwing.Supplier<? extends V> task : tasks) {
+        results.add(scope.fork(task));
+      }
+      List<V> values = new ArrayList<>(tasks.size());
+      for (Async<? extends V> result : results) {
+        values.add(result.join().get());
+      }
+      return values;
+    });
+  }
+
+  /**
+   * Run the given value providers concurrently, one virtual thread per task on JDK 21+, and get
+   * the first success value. The other tasks are cancelled. Fails when every task fails, with a
+   * {@link CompletionException} like in {@link #scope(Throwing.Function)}: the first failure is
+   * the cause, the others are suppressed exceptions.
+   *
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return A new success try with the first success value, or failure try.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<V> any(Throwing.Supplier<? extends V>... tasks) {
+    return first(VirtualThreads.executor(), Arrays.asList(tasks), true);
+  }
+
+  /**
+   * Run the given value providers concurrently and get the first success value, see
+   * {@link #any(Throwing.Supplier[])}.
+   *
+   * @param executor Executor for tasks.
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return A new success try with the first success value, or failure try.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<V> any(Executor executor, Throwing.Supplier<? extends V>... tasks) {
+    return first(executor, Arrays.asList(tasks), true);
+  }
+
+  /**
+   * Run the given value providers concurrently, one virtual thread per task on JDK 21+, and get
+   * the first result, success or failure. The other tasks are cancelled, their exceptions are
+   * ignored.
+   *
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return The first try value.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<V> race(Throwing.Supplier<? extends V>... tasks) {
+    return first(VirtualThreads.executor(), Arrays.asList(tasks), false);
+  }
+
+  /**
+   * Run the given value providers concurrently and get the first result, success or failure, see
+   * {@link #race(Throwing.Supplier[])}.
+   *
+   * @param executor Executor for tasks.
+   * @param tasks Value providers.
+   * @param <V> Value type.
+   * @return The first try value.
+   */
+  @SafeVarargs
+  @SuppressWarnings("varargs") // tasks are only read
+  public static <V> Value<V> race(Executor executor, Throwing.Supplier<? extends V>... tasks) {
+    return first(executor, Arrays.asList(tasks), false);
+  }
+
+  /**
+   * First success value or first result of the given tasks. The others are cancelled and awaited.
+   */
+  private static <V> Value<V> first(Executor executor,
+    List<Throwing.Supplier<? extends V>> tasks, boolean success) {
+    if (tasks.isEmpty()) {
+      throw new IllegalArgumentException("At least one task required");
+    }
+    Scope scope = new Scope(executor, false);
+    CompletableFuture<V> winner = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(tasks.size());
+    for (Throwing.Supplier<? extends V> task : tasks) {
+      scope.fork(task).future.whenComplete((value, x) -> {
+        if (x == null || !success) {
+          Async.complete(winner, value, x);
+        } else if (pending.decrementAndGet() == 0) {
+          winner.completeExceptionally(x);
+        }
+      });
+    }
+    Value<V> value = new Async<>(winner).join();
+    scope.cancel();
+    Throwable failure = scope.join();
+    if (value.isFailure() && success && failure != null) {
+      // every task failed
+      return new Failure<>(scope.cause(failure));
+    }
+    return value;
+  }
+
   /**
    * Creates a side effect try from given runnable. Don't forget to either throw or log the exception
    * in case of failure. Unless, of course you don't care about the exception.
@@ -727,9 +1574,9 @@ public abstract class Try {
   public static Try run(Throwing.Runnable runnable) {
     try {
       runnable.run();
-      return new Success<>(null);
+      return Success.NULL;
     } catch (Throwable x) {
-      return new Failure(x);
+      return new Failure<>(x);
     }
   }
 
@@ -739,7 +1586,7 @@ public abstract class Try {
    * @return True in case of failure.
    */
   public boolean isFailure() {
-    return getCause().isPresent();
+    return cause() != null;
   }
 
   /**
@@ -758,7 +1605,10 @@ public abstract class Try {
    * @return This try.
    */
   public Try onFailure(Consumer<? super Throwable> action) {
-    getCause().ifPresent(action);
+    Throwable x = cause();
+    if (x != null) {
+      action.accept(x);
+    }
     return this;
   }
 
@@ -794,7 +1644,11 @@ public abstract class Try {
    * @return This try for success or a new failure with exception unwrap.
    */
   public <X extends Throwable> Try unwrap(Class<? extends X> type) {
-    return unwrap(type::isInstance);
+    Throwable x = cause();
+    if (x == null || !type.isInstance(x) || x.getCause() == null) {
+      return this;
+    }
+    return new Failure<>(x.getCause());
   }
 
   /**
@@ -815,15 +1669,15 @@ public abstract class Try {
    * @return This try for success or a new failure with exception unwrap.
    */
   public Try unwrap(Throwing.Predicate<Throwable> predicate) {
+    Throwable x = cause();
+    if (x == null) {
+      return this;
+    }
     try {
-      return getCause()
-        .filter(predicate)
-        .map(Throwable::getCause)
-        .filter(Objects::nonNull)
-        .map(x -> (Try) Try.failure(x))
-        .orElse(this);
-    } catch (Throwable x) {
-      return failure(x);
+      Throwable cause = x.getCause();
+      return predicate.test(x) && cause != null ? new Failure<>(cause) : this;
+    } catch (Throwable ex) {
+      return new Failure<>(ex);
     }
   }
 
@@ -847,7 +1701,15 @@ public abstract class Try {
    */
   public <X extends Throwable> Try wrap(Class<? extends X> predicate,
     Throwing.Function<X, Throwable> wrapper) {
-    return wrap(predicate::isInstance, wrapper);
+    Throwable x = cause();
+    if (x == null || !predicate.isInstance(x)) {
+      return this;
+    }
+    try {
+      return new Failure<>(wrapper.apply((X) x));
+    } catch (Throwable ex) {
+      return new Failure<>(ex);
+    }
   }
 
   /**
@@ -860,13 +1722,14 @@ public abstract class Try {
    */
   public <X extends Throwable> Try wrap(Throwing.Predicate<X> predicate,
     Throwing.Function<X, Throwable> wrapper) {
+    Throwable x = cause();
+    if (x == null) {
+      return this;
+    }
     try {
-      return getCause()
-        .filter(x -> predicate.test((X) x))
-        .map(x -> (Try) Try.failure(wrapper.apply((X) x)))
-        .orElse(this);
-    } catch (Throwable x) {
-      return failure(x);
+      return predicate.test((X) x) ? new Failure<>(wrapper.apply((X) x)) : this;
+    } catch (Throwable ex) {
+      return new Failure<>(ex);
     }
   }
 
@@ -893,7 +1756,7 @@ public abstract class Try {
    */
   public Try onComplete(Throwing.Consumer<Throwable> action) {
     try {
-      action.accept(getCause().orElse(null));
+      action.accept(cause());
       return this;
     } catch (Throwable x) {
       return Try.failure(x);
@@ -904,7 +1767,10 @@ public abstract class Try {
    * Propagate/throw the exception in case of failure.
    */
   public void throwException() {
-    getCause().ifPresent(Throwing::sneakyThrow);
+    Throwable x = cause();
+    if (x != null) {
+      throw Throwing.sneakyThrow(x);
+    }
   }
 
   /**
@@ -914,4 +1780,14 @@ public abstract class Try {
    */
   public abstract Optional<Throwable> getCause();
 
+  /**
+   * Cause for failure or null for success result. Same as {@link #getCause()} without the
+   * optional, used by the combinators to check state.
+   *
+   * @return Cause for failure or null.
+   */
+  Throwable cause() {
+    return getCause().orElse(null);
+  }
+
 }
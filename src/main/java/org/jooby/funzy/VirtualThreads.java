@@ -0,0 +1,95 @@
+package org.jooby.funzy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual thread support on JDK 21+, resolved at runtime so the library keeps running on Java 8.
+ */
+final class VirtualThreads {
+
+  /** Platform threads for older JDKs, created on first use. */
+  private static final class Fallback {
+    static final ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger next = new AtomicInteger();
+
+      @Override public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "funzy-fork-" + next.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /** Thread.isVirtual() or null before JDK 21. */
+  private static final MethodHandle IS_VIRTUAL = handle(false, "isVirtual",
+      MethodType.methodType(boolean.class));
+
+  /** Thread.startVirtualThread(Runnable) or null before JDK 21. */
+  private static final MethodHandle START = IS_VIRTUAL == null ? null : handle(true,
+      "startVirtualThread", MethodType.methodType(Thread.class, Runnable.class));
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * True when running on a JDK with virtual threads.
+   *
+   * @return True when running on a JDK with virtual threads.
+   */
+  static boolean available() {
+    return IS_VIRTUAL != null;
+  }
+
+  /**
+   * True when the current thread is a virtual thread. Per-thread structures are skipped on
+   * virtual threads: they are cheap, short lived and many, a thread local would rarely be reused.
+   *
+   * @return True when the current thread is a virtual thread.
+   */
+  static boolean isVirtual() {
+    if (IS_VIRTUAL == null) {
+      return false;
+    }
+    try {
+      return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+    } catch (Throwable x) {
+      throw Throwing.sneakyThrow(x);
+    }
+  }
+
+  /**
+   * Executor running each task on a new virtual thread. Before JDK 21 tasks run on a shared pool
+   * of daemon threads, which grows as needed.
+   *
+   * @return Thread per task executor.
+   */
+  static Executor executor() {
+    return START == null ? Fallback.POOL : VirtualThreads::start;
+  }
+
+  private static void start(Runnable task) {
+    try {
+      Thread thread = (Thread) START.invokeExact(task);
+    } catch (Throwable x) {
+      throw Throwing.sneakyThrow(x);
+    }
+  }
+
+  private static MethodHandle handle(boolean isStatic, String name, MethodType type) {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+      return isStatic
+          ? lookup.findStatic(Thread.class, name, type)
+          : lookup.findVirtual(Thread.class, name, type);
+    } catch (NoSuchMethodException | IllegalAccessException x) {
+      return null;
+    }
+  }
+}
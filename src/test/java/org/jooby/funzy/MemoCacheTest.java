@@ -0,0 +1,748 @@
+package org.jooby.funzy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+public class MemoCacheTest {
+
+  @Test
+  public void unbounded() {
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    assertNull(cache.getIfPresent("a"));
+    assertEquals("A", cache.get("a", k -> "A"));
+    assertEquals("A", cache.get("a", k -> "B"));
+    assertEquals(1, cache.size());
+
+    cache.invalidate("a");
+    assertEquals("B", cache.get("a", k -> "B"));
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void boundedEvictsUnreferencedEntries() {
+    MemoCache<Integer, String> cache = MemoCache.builder().maximumSize(3).build();
+    cache.get(1, k -> "1");
+    cache.get(2, k -> "2");
+    cache.get(3, k -> "3");
+    // hot entry gets a second chance
+    assertEquals("1", cache.getIfPresent(1));
+
+    cache.get(4, k -> "4");
+    assertEquals(3, cache.size());
+    assertEquals("1", cache.getIfPresent(1));
+    assertNull(cache.getIfPresent(2));
+    assertEquals("4", cache.getIfPresent(4));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void boundedRequiresPositiveSize() {
+    MemoCache.builder().maximumSize(0);
+  }
+
+  @Test
+  public void expireAfterWrite() {
+    AtomicLong time = new AtomicLong();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .expireAfterWrite(Duration.ofSeconds(10))
+        .ticker(time::get)
+        .build();
+    assertEquals("1", cache.get("k", k -> "1"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(9));
+    assertEquals("1", cache.get("k", k -> "2"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertNull(cache.getIfPresent("k"));
+    assertEquals("2", cache.get("k", k -> "2"));
+  }
+
+  @Test
+  public void expireAfterAccess() {
+    AtomicLong time = new AtomicLong();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .expireAfterAccess(Duration.ofSeconds(10))
+        .ticker(time::get)
+        .build();
+    assertEquals("1", cache.get("k", k -> "1"));
+    for (int i = 0; i < 5; i++) {
+      time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+      assertEquals("1", cache.get("k", k -> "2"));
+    }
+    time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertEquals("2", cache.get("k", k -> "2"));
+  }
+
+  @Test
+  public void refreshAfterWriteServesStaleValue() {
+    AtomicLong time = new AtomicLong();
+    AtomicInteger loads = new AtomicInteger();
+    MemoCache<String, Integer> cache = MemoCache.builder()
+        .refreshAfterWrite(Duration.ofSeconds(10))
+        .executor(Runnable::run)
+        .ticker(time::get)
+        .build();
+    Throwing.Function<String, Integer> loader = k -> loads.incrementAndGet();
+    assertEquals(1, cache.get("k", loader).intValue());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    // stale value served while refresh runs
+    assertEquals(1, cache.get("k", loader).intValue());
+    assertEquals(2, cache.get("k", loader).intValue());
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void getFreshSkipsNullsAndDueRefreshes() {
+    AtomicLong time = new AtomicLong();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .refreshAfterWrite(Duration.ofSeconds(10))
+        .cacheNulls(Duration.ofSeconds(60))
+        .recordStats()
+        .executor(Runnable::run)
+        .ticker(time::get)
+        .build();
+    assertNull(cache.getFresh("k"));
+    assertEquals("v", cache.get("k", k -> "v"));
+    assertEquals("v", cache.getFresh("k"));
+    assertNull(cache.get("null", k -> null));
+    assertNull(cache.getFresh("null"));
+    assertEquals(1, cache.stats().hitCount());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    // refresh due: the caller goes through get with a loader
+    assertNull(cache.getFresh("k"));
+    assertEquals("v", cache.get("k", k -> "v2"));
+    assertEquals("v2", cache.getFresh("k"));
+  }
+
+  @Test
+  public void refreshFailureKeepsStaleValue() {
+    AtomicLong time = new AtomicLong();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .refreshAfterWrite(Duration.ofSeconds(1))
+        .executor(Runnable::run)
+        .ticker(time::get)
+        .build();
+    assertEquals("v", cache.get("k", k -> "v"));
+    time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals("v", cache.get("k", k -> {
+      throw new IllegalStateException("intentional err");
+    }));
+    assertEquals("v", cache.get("k", k -> "v2"));
+    assertEquals("v2", cache.get("k", k -> "v3"));
+  }
+
+  @Test
+  public void compositeKeys() {
+    assertEquals(MemoKey.of("a", 1), MemoKey.of("a", 1));
+    assertEquals(MemoKey.of("a", 1).hashCode(), MemoKey.of("a", 1).hashCode());
+    assertNotEquals(MemoKey.of("a", 1), MemoKey.of(1, "a"));
+    assertNotEquals(MemoKey.of("a", null), MemoKey.of("a", null, null));
+    assertEquals(MemoKey.of(null, null, null), MemoKey.of(null, null, null));
+
+    MemoKey key = MemoKey.of(1, 2, 3, 4, 5, 6, 7, 8);
+    assertEquals(8, key.size());
+    assertEquals(8, key.get(7));
+    assertEquals("[1, 2, 3, 4, 5, 6, 7, 8]", key.toString());
+  }
+
+  @Test
+  public void singleFlight() throws Exception {
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        futures.add(executor.submit(() -> cache.get("k", k -> {
+          loads.incrementAndGet();
+          release.await();
+          return "v";
+        })));
+      }
+      Thread.sleep(50L);
+      release.countDown();
+      for (Future<String> future : futures) {
+        assertEquals("v", future.get(10, TimeUnit.SECONDS));
+      }
+      assertEquals(1, loads.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void singleFlightFailureReachesEveryWaiter() throws Exception {
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> cache.get("k", k -> {
+          loads.incrementAndGet();
+          release.await();
+          throw new IOException("intentional err");
+        })));
+      }
+      Thread.sleep(50L);
+      release.countDown();
+      for (Future<String> future : futures) {
+        try {
+          future.get(10, TimeUnit.SECONDS);
+          fail();
+        } catch (ExecutionException x) {
+          assertTrue(x.getCause() instanceof IOException);
+        }
+      }
+      assertEquals(1, loads.get());
+      // failures are not cached
+      assertEquals("v", cache.get("k", k -> "v"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void missesOfDifferentKeysDontBlockEachOther() throws Exception {
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    Throwing.Supplier<String> suffix = () -> "s";
+    Throwing.Supplier<String> singleton = suffix.singleton();
+    int n = 64;
+    // every loader waits for all the others: only completes if no lock is held while loading
+    CountDownLatch loading = new CountDownLatch(n);
+    ExecutorService executor = VirtualThreads.available()
+        ? (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+        .invoke(null)
+        : Executors.newFixedThreadPool(n);
+    try {
+      List<Future<String>> futures = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        String key = "k" + i;
+        futures.add(executor.submit(() -> cache.get(key, k -> {
+          loading.countDown();
+          loading.await();
+          return k + singleton.get();
+        })));
+      }
+      for (int i = 0; i < n; i++) {
+        assertEquals("k" + i + "s", futures.get(i).get(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void recursiveLoadOfSameKey() {
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    cache.get("k", k -> cache.get("k", k2 -> "v"));
+  }
+
+  @Test
+  public void cacheNulls() {
+    AtomicLong time = new AtomicLong();
+    AtomicInteger loads = new AtomicInteger();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .cacheNulls(Duration.ofSeconds(5))
+        .ticker(time::get)
+        .build();
+    Throwing.Function<String, String> loader = k -> {
+      loads.incrementAndGet();
+      return null;
+    };
+    assertNull(cache.get("k", loader));
+    assertNull(cache.get("k", loader));
+    assertEquals(1, loads.get());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(5));
+    assertNull(cache.get("k", loader));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void nullsAreNotCachedByDefault() {
+    AtomicInteger loads = new AtomicInteger();
+    MemoCache<String, String> cache = MemoCache.builder().build();
+    Throwing.Function<String, String> loader = k -> {
+      loads.incrementAndGet();
+      return null;
+    };
+    assertNull(cache.get("k", loader));
+    assertNull(cache.get("k", loader));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void cacheFailures() {
+    AtomicLong time = new AtomicLong();
+    AtomicInteger loads = new AtomicInteger();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .cacheFailures(Duration.ofSeconds(1))
+        .ticker(time::get)
+        .build();
+    Throwing.Function<String, String> loader = k -> {
+      loads.incrementAndGet();
+      throw new IOException("intentional err");
+    };
+    for (int i = 0; i < 3; i++) {
+      try {
+        cache.get("k", loader);
+        fail();
+      } catch (Throwable x) {
+        assertTrue(x instanceof IOException);
+      }
+    }
+    assertEquals(1, loads.get());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    assertEquals("v", cache.get("k", k -> "v"));
+  }
+
+  @Test
+  public void stats() throws Exception {
+    MemoCache<Integer, Integer> cache = MemoCache.builder()
+        .maximumSize(2)
+        .recordStats()
+        .build();
+    cache.get(1, k -> k);
+    cache.get(1, k -> k);
+    cache.get(2, k -> k);
+    cache.get(3, k -> k);
+    try {
+      cache.get(4, k -> {
+        throw new IOException("intentional err");
+      });
+      fail();
+    } catch (Throwable x) {
+      assertTrue(x instanceof IOException);
+    }
+    MemoStats stats = cache.stats();
+    assertEquals(1, stats.hitCount());
+    assertEquals(4, stats.missCount());
+    assertEquals(0.2, stats.hitRate(), 0.001);
+    assertEquals(3, stats.loadSuccessCount());
+    assertEquals(1, stats.loadFailureCount());
+    assertEquals(4, stats.loadCount());
+    assertTrue(stats.maxLoadTime() <= stats.totalLoadTime());
+    assertEquals(1, stats.evictionCount());
+    assertEquals(2, stats.size());
+
+    ObjectName name = stats.register("stats-test");
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      assertEquals(1L, server.getAttribute(name, "HitCount"));
+      assertEquals(2L, server.getAttribute(name, "Size"));
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+  }
+
+  @Test
+  public void statsAreOptional() {
+    MemoCache<Integer, Integer> cache = MemoCache.builder().build();
+    cache.get(1, k -> k);
+    cache.get(1, k -> k);
+    assertEquals(0, cache.stats().hitCount());
+    assertEquals(1, cache.stats().size());
+  }
+
+  @Test
+  public void weakKeysAreComparedWithEquals() {
+    MemoCache<Object, String> cache = MemoCache.builder().weakKeys().build();
+    String key = new String("a");
+    assertEquals("A", cache.get(key, k -> "A"));
+    assertEquals("A", cache.get(new String("a"), k -> "B"));
+    assertEquals("AB", cache.get(MemoKey.of(String.class, null), k -> "AB"));
+    assertEquals("AB", cache.get(MemoKey.of(String.class, null), k -> "CD"));
+    assertEquals(2, cache.size());
+
+    cache.invalidate("a");
+    assertNull(cache.getIfPresent(key));
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void weakKeysAreCollected() throws Exception {
+    MemoCache<Object, String> cache = MemoCache.builder().weakKeys().build();
+    Object key = new Object();
+    cache.get(key, k -> "v");
+    cache.get(MemoKey.of(String.class, new Object()), k -> "composite");
+    assertEquals(2, cache.size());
+
+    key = null;
+    for (int i = 0; i < 50 && cache.size() > 0; i++) {
+      System.gc();
+      Thread.sleep(10);
+      // misses drain collected entries
+      assertNull(cache.getIfPresent(new Object()));
+    }
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void softValues() {
+    AtomicInteger calls = new AtomicInteger();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .softValues()
+        .maximumSize(10)
+        .build();
+    assertEquals("a0", cache.get("a", k -> k + calls.getAndIncrement()));
+    assertEquals("a0", cache.get("a", k -> k + calls.getAndIncrement()));
+    assertEquals("a0", cache.getIfPresent("a"));
+    assertEquals(1, calls.get());
+  }
+
+  @Test
+  public void snapshotAndRestore() throws Exception {
+    Path dir = Files.createTempDirectory("memo");
+    Path file = dir.resolve("items.bin");
+    MemoCodec<Object> keys = MemoCodec.key(MemoCodec.string(), MemoCodec.int32());
+
+    AtomicInteger calls = new AtomicInteger();
+    Throwing.Function2<String, Integer, String> fn = (s, i) -> {
+      calls.incrementAndGet();
+      return s + i;
+    };
+    MemoCache<Object, String> cache = MemoCache.builder().build();
+    Throwing.Function2<String, Integer, String> memo = fn.memoized(cache);
+    memo.apply("a", 1);
+    memo.apply(null, 2);
+    assertEquals(2, cache.snapshot(file, keys, MemoCodec.string()));
+
+    MemoCache<Object, String> restored = MemoCache.builder().build();
+    assertEquals(2, restored.restore(file, keys, MemoCodec.string()));
+    Throwing.Function2<String, Integer, String> warm = fn.memoized(restored);
+    assertEquals("a1", warm.apply("a", 1));
+    assertEquals("null2", warm.apply(null, 2));
+    assertEquals(2, calls.get());
+
+    // overwrite
+    memo.apply("b", 3);
+    assertEquals(3, cache.snapshot(file, keys, MemoCodec.string()));
+    assertEquals(1, restored.restore(file, keys, MemoCodec.string()));
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(1, files.count());
+    }
+  }
+
+  @Test
+  public void restoreMissingSnapshot() throws Exception {
+    Path file = Files.createTempDirectory("memo").resolve("missing.bin");
+    MemoCache<Object, String> cache = MemoCache.builder().build();
+    assertEquals(0, cache.restore(file, MemoCodec.key(MemoCodec.string()), MemoCodec.string()));
+  }
+
+  @Test(expected = IOException.class)
+  public void restoreRejectsUnknownFiles() throws Exception {
+    Path file = Files.createTempFile("memo", ".bin");
+    Files.write(file, "not a snapshot".getBytes());
+    MemoCache<Object, String> cache = MemoCache.builder().build();
+    cache.restore(file, MemoCodec.key(MemoCodec.string()), MemoCodec.string());
+  }
+
+  @Test
+  public void longKeys() {
+    LongMemoCache<String> cache = new LongMemoCache<>();
+    for (long i = 0; i < 100; i++) {
+      assertNull(cache.putIfAbsent(i * 16, "v" + i));
+    }
+    assertEquals("v0", cache.putIfAbsent(0L, "x"));
+    assertEquals(100, cache.size());
+    assertEquals("v42", cache.getIfPresent(42 * 16));
+
+    cache.invalidate(42L * 16);
+    assertNull(cache.getIfPresent(42 * 16));
+    assertEquals(99, cache.size());
+    for (long i = 0; i < 100; i++) {
+      assertEquals(i == 42 ? null : "v" + i, cache.getIfPresent(i * 16));
+    }
+
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertEquals("y", cache.get(7L, k -> "y"));
+  }
+
+  @Test
+  public void maximumWeightKeepsExpensiveEntries() {
+    MemoCache<String, String> cache = MemoCache.builder()
+        .maximumWeight(10)
+        .weigher((String key, String value) -> value.length())
+        .build();
+    cache.get("slow", k -> {
+      Thread.sleep(20);
+      return "slow!";
+    });
+    for (int i = 0; i < 10; i++) {
+      cache.get("fast" + i, k -> "fast" + k.charAt(4));
+    }
+    assertEquals("slow!", cache.getIfPresent("slow"));
+    assertEquals(2, cache.size());
+
+    // heavier than the bound, not kept
+    cache.get("huge", k -> "0123456789A");
+    assertNull(cache.getIfPresent("huge"));
+  }
+
+  @Test
+  public void maximumWeightEvictsHeavyEntries() {
+    MemoCache<String, String> cache = MemoCache.builder()
+        .maximumWeight(10)
+        .weigher((String key, String value) -> value.length())
+        .build();
+    // same load cost for every entry, measured times depend on JVM warm up
+    cache.putIfAbsent("heavy", "12345678", 1L);
+    cache.putIfAbsent("a", "a", 1L);
+    cache.putIfAbsent("b", "b", 1L);
+    cache.putIfAbsent("c", "c", 1L);
+    assertNull(cache.getIfPresent("heavy"));
+    assertEquals(3, cache.size());
+  }
+
+  @Test
+  public void invalidateReleasesWeight() {
+    MemoCache<Integer, Integer> cache = MemoCache.builder()
+        .maximumWeight(1000)
+        .weigher((Integer key, Integer value) -> 1)
+        .build();
+    for (int i = 0; i < 1000; i++) {
+      cache.get(i, k -> k);
+    }
+    for (int i = 0; i < 100; i++) {
+      cache.invalidate(i);
+    }
+    for (int i = 1000; i < 1100; i++) {
+      cache.get(i, k -> k);
+    }
+    // live weight never went over the bound, nothing is evicted
+    assertEquals(1000, cache.size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void maximumWeightRequiresWeigher() {
+    MemoCache.builder().maximumWeight(10).build();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void maximumWeightAndSizeCantBeCombined() {
+    MemoCache.builder().maximumWeight(10).maximumSize(10)
+        .weigher((Object key, Object value) -> 1).build();
+  }
+
+  @Test
+  public void threadLocalCache() throws Exception {
+    AtomicLong time = new AtomicLong();
+    MemoCache<String, String> cache = MemoCache.builder()
+        .threadLocalCache(4)
+        .expireAfterWrite(Duration.ofSeconds(10))
+        .ticker(time::get)
+        .build();
+    assertEquals("1", cache.get("k", k -> "1"));
+    assertEquals("1", cache.get("k", k -> "2"));
+    assertEquals("1", cache.get("k", k -> "2"));
+
+    // invalidation reaches thread local entries
+    cache.invalidate("k");
+    assertEquals("2", cache.get("k", k -> "2"));
+    assertEquals("2", cache.get("k", k -> "3"));
+
+    // so does expiration
+    time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertEquals("3", cache.get("k", k -> "3"));
+
+    // other threads see the shared entry
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      assertEquals("3", executor.submit(() -> cache.get("k", k -> "4")).get());
+      cache.invalidateAll();
+      assertEquals("5", executor.submit(() -> cache.get("k", k -> "5")).get());
+      assertEquals("5", cache.get("k", k -> "6"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void threadLocalCacheRequiresStrongKeys() {
+    MemoCache.builder().threadLocalCache(4).weakKeys().build();
+  }
+
+  /** Custom storage, as plugged in by users. */
+  private static class MapCache<K, V> extends MemoCache<K, V> {
+    final Map<K, V> map = new HashMap<>();
+
+    @Override protected synchronized V getIfPresent(K key) {
+      return map.get(key);
+    }
+
+    @Override protected synchronized V putIfAbsent(K key, V value) {
+      return map.putIfAbsent(key, value);
+    }
+
+    @Override public synchronized void invalidate(K key) {
+      map.remove(key);
+    }
+
+    @Override public synchronized void invalidateAll() {
+      map.clear();
+    }
+
+    @Override public synchronized long size() {
+      return map.size();
+    }
+  }
+
+  @Test
+  public void customCache() {
+    MapCache<Object, String> cache = new MapCache<>();
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function2<String, Integer, String> fn = Throwing
+        .<String, Integer, String>throwingFunction((s, i) -> s + i + counter.incrementAndGet())
+        .memoized(cache);
+    assertEquals("a11", fn.apply("a", 1));
+    assertEquals("a11", fn.apply("a", 1));
+    assertEquals("a11", cache.map.get(MemoKey.of("a", 1)));
+
+    MapCache<Object, String> singleton = new MapCache<>();
+    Throwing.Supplier<String> supplier = Throwing
+        .<String>throwingSupplier(() -> "s" + counter.incrementAndGet())
+        .singleton(singleton);
+    assertEquals("s2", supplier.get());
+    assertEquals("s2", supplier.get());
+    singleton.invalidateAll();
+    assertEquals("s3", supplier.get());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void customCacheSnapshotRequiresIteration() throws Exception {
+    new MapCache<Object, String>().snapshot(Files.createTempFile("memo", ".bin"),
+        MemoCodec.key(MemoCodec.string()), MemoCodec.string());
+  }
+
+  @Test
+  public void factories() {
+    MemoCache<String, String> concurrent = MemoCache.concurrent();
+    assertEquals("a", concurrent.get("a", k -> k));
+
+    MemoCache<Integer, Integer> bounded = MemoCache.bounded(2);
+    for (int i = 0; i < 10; i++) {
+      bounded.get(i, k -> k);
+    }
+    assertEquals(2, bounded.size());
+
+    MemoCache<String, String> expiring = MemoCache.expiring(Duration.ofSeconds(1));
+    assertEquals("a", expiring.get("a", k -> k));
+    assertEquals("a", expiring.getIfPresent("a"));
+  }
+
+  @Test
+  public void offHeap() {
+    MemoCache<Object, String> cache = MemoCache.offHeap(64 * 1024,
+        MemoCodec.key(MemoCodec.int32()), MemoCodec.string());
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<Integer, String> fn = Throwing.<Integer, String>throwingFunction(v -> {
+      counter.incrementAndGet();
+      return "v" + v;
+    }).memoized(cache);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("v" + i, fn.apply(i));
+    }
+    assertEquals("v" + null, fn.apply(null));
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("v" + i, fn.apply(i));
+    }
+    assertEquals(1001, counter.get());
+    assertEquals(1001, cache.size());
+
+    // deletes keep probe sequences intact
+    for (int i = 0; i < 1000; i += 2) {
+      cache.invalidate(i);
+    }
+    assertEquals(501, cache.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i % 2 == 0 ? null : "v" + i, cache.getIfPresent(i));
+    }
+    cache.invalidateAll();
+    assertEquals(0, cache.size());
+    assertNull(cache.getIfPresent(1));
+  }
+
+  @Test
+  public void offHeapEvictsOldestEntries() {
+    MemoCache<Object, String> cache = MemoCache.offHeap(1024,
+        MemoCodec.key(MemoCodec.int32()), MemoCodec.string());
+    String value = new String(new char[100]).replace('\0', 'x');
+    for (int i = 0; i < 100; i++) {
+      cache.get(i, k -> value + k);
+      assertEquals(value + i, cache.getIfPresent(i));
+    }
+    assertTrue(cache.size() > 0 && cache.size() < 10);
+    assertEquals(value + 99, cache.getIfPresent(99));
+    assertNull(cache.getIfPresent(0));
+
+    // larger than the whole store
+    String huge = new String(new char[2048]);
+    assertEquals(huge, cache.get(-1, k -> huge));
+    assertNull(cache.getIfPresent(-1));
+  }
+
+  @Test
+  public void offHeapConcurrentAccess() throws Exception {
+    MemoCache<Object, String> cache = MemoCache.offHeap(4 * 1024,
+        MemoCodec.key(MemoCodec.int32()), MemoCodec.string());
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 20_000; i++) {
+            int key = i % 300;
+            String value = cache.get(key, k -> "value-" + k);
+            assertEquals("value-" + key, value);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void offHeapSnapshot() throws Exception {
+    Path file = Files.createTempDirectory("memo").resolve("offheap.bin");
+    MemoCodec<Object> keys = MemoCodec.key(MemoCodec.int32());
+    MemoCache<Object, String> cache = MemoCache.offHeap(4 * 1024, keys, MemoCodec.string());
+    cache.get(1, k -> "one");
+    cache.get(2, k -> "two");
+    assertEquals(2, cache.snapshot(file, keys, MemoCodec.string()));
+
+    MemoCache<Object, String> restored = MemoCache.offHeap(4 * 1024, keys, MemoCodec.string());
+    assertEquals(2, restored.restore(file, keys, MemoCodec.string()));
+    assertEquals("two", restored.getIfPresent(2));
+  }
+}
@@ -2,13 +2,28 @@ package org.jooby.funzy;
 
 import static org.jooby.funzy.Throwing.throwingFunction;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ThrowingFunctionTest {
 
@@ -77,4 +92,348 @@ public class ThrowingFunctionTest {
     fn.apply(null, true, "x");
   }
 
+  @Test
+  public void memoized() {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<Integer, Integer> fn = Throwing.<Integer, Integer>throwingFunction(v -> {
+      counter.incrementAndGet();
+      return v * 2;
+    }).memoized();
+    assertEquals(2, fn.apply(1).intValue());
+    assertEquals(2, fn.apply(1).intValue());
+    assertEquals(4, fn.apply(2).intValue());
+    assertEquals(2, counter.get());
+    assertTrue(fn == fn.memoized());
+
+    Throwing.Function2<String, String, String> fn2 = Throwing.<String, String, String>throwingFunction(
+        (v1, v2) -> {
+          counter.incrementAndGet();
+          return v1 + v2;
+        }).memoized();
+    assertEquals("ab", fn2.apply("a", "b"));
+    assertEquals("ab", fn2.apply("a", "b"));
+    assertEquals("ba", fn2.apply("b", "a"));
+    assertEquals(4, counter.get());
+  }
+
+  @Test
+  public void memoizedConcurrentAccess() throws Exception {
+    Throwing.Function<Integer, Object> fn = Throwing.<Integer, Object>throwingFunction(
+        v -> new Object()).memoized();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Object expected = fn.apply(1);
+      Future<?>[] futures = new Future[64];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = executor.submit(() -> assertTrue(expected == fn.apply(1)));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void memoizedWithMaxEntries() {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<Integer, Integer> fn = Throwing.<Integer, Integer>throwingFunction(v -> {
+      counter.incrementAndGet();
+      return v;
+    }).memoized(2);
+    for (int i = 0; i < 10; i++) {
+      fn.apply(i);
+    }
+    assertEquals(10, counter.get());
+    fn.apply(9);
+    assertEquals(10, counter.get());
+    fn.apply(0);
+    assertEquals(11, counter.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void memoizedWithMaxEntriesOnMemoizedFunction() {
+    Throwing.<Integer, Integer>throwingFunction(v -> v).memoized().memoized(2);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void memoizedWithCacheOnMemoizedFunction() {
+    Throwing.Function2<Integer, Integer, Integer> sum = (v1, v2) -> v1 + v2;
+    sum.memoized().memoized(MemoCache.builder().build());
+  }
+
+  @Test
+  public void singleton() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Supplier<Integer> supplier = Throwing.<Integer>throwingSupplier(() -> {
+      Thread.sleep(50L);
+      return counter.incrementAndGet();
+    }).singleton();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Future<?>[] futures = new Future[8];
+      for (int i = 0; i < futures.length; i++) {
+        futures[i] = executor.submit(() -> assertEquals(1, supplier.get().intValue()));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+      assertEquals(1, counter.get());
+      assertTrue(supplier == supplier.singleton());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void memoizedAsync() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Throwing.Function<Integer, CompletableFuture<Integer>> fn = Throwing
+          .<Integer, Integer>throwingFunction(v -> {
+            release.await();
+            counter.incrementAndGet();
+            return v * 2;
+          }).memoizedAsync(executor);
+      CompletableFuture<Integer> f1 = fn.apply(1);
+      CompletableFuture<Integer> f2 = fn.apply(1);
+      assertTrue(f1 == f2);
+      assertFalse(f1.isDone());
+      release.countDown();
+      assertEquals(2, f1.get(10, TimeUnit.SECONDS).intValue());
+      assertEquals(2, fn.apply(1).get(10, TimeUnit.SECONDS).intValue());
+      assertEquals(1, counter.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void memoizedAsyncDiscardsFailures() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<Integer, CompletableFuture<Integer>> fn = Throwing
+        .<Integer, Integer>throwingFunction(v -> {
+          if (counter.incrementAndGet() == 1) {
+            throw new IOException("intentional err");
+          }
+          return v;
+        }).memoizedAsync(Runnable::run);
+    try {
+      fn.apply(1).get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException x) {
+      assertTrue(x.getCause() instanceof IOException);
+    }
+    assertEquals(1, fn.apply(1).get(10, TimeUnit.SECONDS).intValue());
+    assertEquals(1, fn.apply(1).get(10, TimeUnit.SECONDS).intValue());
+    assertEquals(2, counter.get());
+  }
+
+
+  @Test
+  public void intFunctionMemoized() {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.IntFunction<String> fn = Throwing.<String>throwingIntFunction(v -> {
+      counter.incrementAndGet();
+      return "v" + v;
+    }).memoized();
+    for (int round = 0; round < 2; round++) {
+      for (int i = -500; i < 500; i++) {
+        assertEquals("v" + i, fn.apply(i));
+      }
+    }
+    assertEquals(1000, counter.get());
+    assertTrue(fn == fn.memoized());
+  }
+
+  @Test
+  public void longFunctionMemoized() {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.LongFunction<String> fn = Throwing.<String>throwingLongFunction(v -> {
+      counter.incrementAndGet();
+      return v == 0 ? null : "v" + v;
+    }).memoized();
+    assertEquals("v" + Long.MAX_VALUE, fn.apply(Long.MAX_VALUE));
+    assertEquals("v" + Long.MAX_VALUE, fn.apply(Long.MAX_VALUE));
+    assertEquals("v" + Long.MIN_VALUE, fn.apply(Long.MIN_VALUE));
+    assertEquals(2, counter.get());
+    // nulls are not cached
+    assertEquals(null, fn.apply(0L));
+    assertEquals(null, fn.apply(0L));
+    assertEquals(4, counter.get());
+  }
+
+  @Test
+  public void memoizedBy() {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<int[], Integer> sum = Throwing.<int[], Integer>throwingFunction(values -> {
+      counter.incrementAndGet();
+      return Arrays.stream(values).sum();
+    }).memoizedBy(values -> values[0]);
+    assertEquals(3, sum.apply(new int[]{1, 2}).intValue());
+    assertEquals(3, sum.apply(new int[]{1, 2}).intValue());
+    assertEquals(1, counter.get());
+    assertEquals(2, sum.apply(new int[]{2}).intValue());
+    assertEquals(2, counter.get());
+    assertTrue(sum == sum.memoized());
+
+    Throwing.Function3<String, Integer, Object, String> fn3 = Throwing
+        .<String, Integer, Object, String>throwingFunction((v1, v2, v3) -> {
+          counter.incrementAndGet();
+          return v1 + v2;
+        }).memoizedBy((v1, v2, v3) -> v1 + v2);
+    assertEquals("a1", fn3.apply("a", 1, new Object()));
+    assertEquals("a1", fn3.apply("a", 1, new Object()));
+    assertEquals(3, counter.get());
+  }
+
+  @Test
+  public void memoizedRecursive() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    Throwing.Function<Integer, BigInteger> fib = Throwing.memoizedRecursive((self, n) -> {
+      counter.incrementAndGet();
+      return n < 2 ? BigInteger.valueOf(n) : self.apply(n - 1).add(self.apply(n - 2));
+    });
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<BigInteger>> results = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        results.add(executor.submit(() -> fib.apply(90)));
+      }
+      for (Future<BigInteger> result : results) {
+        assertEquals(new BigInteger("2880067194370816120"), result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(91, counter.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void memoizedRecursiveCycle() {
+    Throwing.Function<Integer, Integer> fn = Throwing.memoizedRecursive((self, n) -> self.apply(n));
+    fn.apply(1);
+  }
+
+  @Test
+  public void preload() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      keys.add(i % 500);
+    }
+    Throwing.MemoizedFunction<Integer, String> fn = Throwing.<Integer, String>throwingFunction(
+        v -> {
+          counter.incrementAndGet();
+          return "v" + v;
+        }).memoizedFunction().preload(keys);
+    assertEquals(500, counter.get());
+    assertEquals("v42", fn.apply(42));
+    assertEquals(500, counter.get());
+
+    assertTrue(fn == fn.preloadAsync(Arrays.asList(1, 500, 501), 2).get());
+    assertEquals(502, counter.get());
+    assertEquals("v501", fn.apply(501));
+    assertEquals(502, counter.get());
+
+    assertTrue(fn.memoized() == fn);
+    assertTrue(Throwing.<Integer, String>throwingFunction(v -> "v" + v)
+        .memoized(10) instanceof Throwing.MemoizedFunction);
+  }
+
+  @Test
+  public void preloadFailure() {
+    MemoCache<Object, String> cache = MemoCache.builder().build();
+    Throwing.MemoizedFunction<Integer, String> fn = Throwing.<Integer, String>throwingFunction(
+        v -> {
+          if (v == 7) {
+            throw new IOException("7");
+          }
+          return "v" + v;
+        }).memoizedFunction(cache);
+    try {
+      fn.preloadAsync(Arrays.asList(1, 2, 7), 2).get();
+      fail();
+    } catch (Exception x) {
+      assertTrue(x.getCause() instanceof IOException);
+    }
+    assertEquals(null, cache.getIfPresent(MemoKey.of(7)));
+  }
+
+  @Test
+  public void preloadWithWeight() {
+    MemoCache<Object, String> cache = MemoCache.builder()
+        .maximumWeight(3)
+        .weigher((key, value) -> 1)
+        .recordStats()
+        .build();
+    Throwing.MemoizedFunction<Integer, String> fn = Throwing.<Integer, String>throwingFunction(
+        v -> {
+          // preloaded results must not look cheaper than the one loaded later
+          Thread.sleep(v == 4 ? 0 : 5);
+          return "v" + v;
+        }).memoizedFunction(cache).preload(Arrays.asList(1, 2, 3));
+    assertEquals(3, cache.stats().loadSuccessCount());
+    fn.apply(4);
+    assertEquals(3, cache.size());
+    assertEquals("v1", cache.getIfPresent(MemoKey.of(1)));
+    assertEquals(null, cache.getIfPresent(MemoKey.of(4)));
+  }
+
+  @Test
+  public void singletonWithTimeToLive() {
+    AtomicInteger counter = new AtomicInteger();
+    AtomicLong time = new AtomicLong();
+    Throwing.Supplier<Integer> fn = counter::incrementAndGet;
+    Throwing.Singleton<Integer> singleton = fn.singleton(MemoCache.builder()
+        .expireAfterWrite(Duration.ofSeconds(10))
+        .ticker(time::get)
+        .build());
+    assertEquals(1, singleton.get().intValue());
+    assertEquals(1, singleton.get().intValue());
+    time.addAndGet(TimeUnit.SECONDS.toNanos(10));
+    assertEquals(2, singleton.get().intValue());
+
+    singleton.invalidate();
+    assertEquals(3, singleton.get().intValue());
+    assertTrue(singleton == singleton.singleton());
+    assertEquals(4, fn.singleton(Duration.ofMinutes(1)).get().intValue());
+  }
+
+  @Test
+  public void singletonRefresh() throws Exception {
+    AtomicInteger counter = new AtomicInteger();
+    CountDownLatch refreshing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Throwing.Supplier<Integer> fn = () -> {
+      int value = counter.incrementAndGet();
+      if (value == 2) {
+        refreshing.countDown();
+        release.await();
+      }
+      return value;
+    };
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Throwing.Singleton<Integer> singleton = fn.singleton(MemoCache.builder()
+          .executor(executor)
+          .build());
+      assertEquals(1, singleton.get().intValue());
+      singleton.refresh();
+      refreshing.await();
+      // current value is served during the refresh
+      assertEquals(1, singleton.get().intValue());
+      // concurrent refresh requests are coalesced
+      singleton.refresh();
+      release.countDown();
+      executor.submit(() -> null).get();
+      assertEquals(2, singleton.get().intValue());
+      assertEquals(2, counter.get());
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
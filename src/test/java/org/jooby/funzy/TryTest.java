@@ -2,11 +2,20 @@ package org.jooby.funzy;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -192,4 +201,315 @@ public class TryTest {
         .get();
     assertEquals("OK", value);
   }
+
+  @Test
+  public void voidAndNullSuccessAreShared() {
+    assertSame(Try.run(() -> {
+    }), Try.success(null));
+    assertSame(Try.success(null), Try.apply(() -> null));
+    assertTrue(Try.success(null).isSuccess());
+  }
+
+  @Test
+  public void recoverWrapAndUnwrapChain() {
+    IllegalStateException cause = new IllegalStateException("intentional err");
+    Integer value = Try.apply(() -> {
+      throw new InvocationTargetException(cause);
+    })
+        .map(v -> 1)
+        .unwrap(InvocationTargetException.class)
+        .wrap(IllegalStateException.class, x -> new IllegalArgumentException(x))
+        .recover(IllegalStateException.class, 0)
+        .recover(IllegalArgumentException.class, x -> {
+          assertSame(cause, x.getCause());
+          return 2;
+        })
+        .map(v -> v * 2)
+        .get();
+    assertEquals(4, value.intValue());
+  }
+
+  @Test
+  public void lightweightFailure() {
+    Try.Value<Integer> failure = Try.failed("bad-number", "Not a number");
+    assertTrue(failure.isFailure());
+    Try.Failed x = (Try.Failed) failure.getCause().get();
+    assertEquals("bad-number", x.getCode());
+    assertEquals("Not a number", x.getMessage());
+    assertEquals(0, x.getStackTrace().length);
+    assertEquals("org.jooby.funzy.Try$Failed[bad-number]: Not a number", x.toString());
+    assertEquals(0, failure.recover(Try.Failed.class, f -> 0).get().intValue());
+    assertEquals("Not a number", Try.failed("Not a number").getCause().get().getMessage());
+  }
+
+  @Test
+  public void preallocatedFailureIsShared() {
+    Try.Failed failed = new Try.Failed("intentional err");
+    assertSame(Try.failure(failed), Try.failure(failed));
+    assertSame(failed, Try.apply(() -> {
+      throw failed;
+    }).getCause().get());
+    // immutable: suppressed exceptions are ignored
+    failed.addSuppressed(new IllegalStateException());
+    assertEquals(0, failed.getSuppressed().length);
+  }
+
+  @Test
+  public void async() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Try.Async<Integer> value = Try.async(() -> "funzy", executor)
+          .map(String::length)
+          .flatMap(n -> Try.async(() -> n * 2, executor));
+      assertEquals(10, value.join().get().intValue());
+      assertEquals(10, value.toCompletableFuture().get().intValue());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void asyncDoesntBlock() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    AtomicReference<String> result = new AtomicReference<>();
+    Try.Async<String> value = Try.async(source)
+        .map(String::toUpperCase)
+        .onSuccess(result::set);
+    assertEquals(false, value.isDone());
+    source.complete("funzy");
+    assertEquals(true, value.isDone());
+    assertEquals("FUNZY", result.get());
+  }
+
+  @Test
+  public void asyncRecoverWrapAndUnwrap() {
+    IllegalStateException cause = new IllegalStateException("intentional err");
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Integer value = Try.async(() -> {
+      throw new InvocationTargetException(cause);
+    }, Runnable::run)
+        .map(v -> 1)
+        .unwrap(InvocationTargetException.class)
+        .onFailure(failure::set)
+        .wrap(IllegalStateException.class, x -> new IllegalArgumentException(x))
+        .recover(IllegalStateException.class, 0)
+        .recoverWith(IllegalArgumentException.class, x -> Try.async(() -> 2, Runnable::run))
+        .join()
+        .get();
+    assertEquals(2, value.intValue());
+    assertSame(cause, failure.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void asyncFailureKeepsOriginalException() {
+    CompletableFuture<String> source = new CompletableFuture<>();
+    Try.Async<String> value = Try.async(source.thenApply(v -> v));
+    source.completeExceptionally(new IOException("intentional err"));
+    value.map(String::length).onComplete((v, x) -> assertTrue(x instanceof IOException))
+        .join()
+        .get();
+  }
+
+  @Test
+  public void asyncRejected() {
+    Try.Value<String> value = Try.async(() -> "x", task -> {
+      throw new RejectedExecutionException();
+    }).join();
+    assertTrue(value.getCause().get() instanceof RejectedExecutionException);
+  }
+
+  @Test
+  public void fork() {
+    assertEquals("funzy", Try.fork(() -> "funzy").join().get());
+  }
+
+  @Test
+  public void scope() {
+    Try.Value<String> value = Try.scope(scope -> {
+      Try.Async<String> a = scope.fork(() -> "fun");
+      Try.Async<String> b = scope.fork(() -> "zy");
+      return a.join().get() + b.join().get();
+    });
+    assertEquals("funzy", value.get());
+  }
+
+  @Test
+  public void scopeFailureCancelsSiblings() {
+    CountDownLatch started = new CountDownLatch(1);
+    AtomicReference<Throwable> sibling = new AtomicReference<>();
+    IOException failure = new IOException("intentional err");
+    Try.Value<Object> value = Try.scope(scope -> {
+      scope.fork(() -> {
+        started.countDown();
+        try {
+          Thread.sleep(60_000L);
+          return "slow";
+        } catch (InterruptedException x) {
+          sibling.set(x);
+          throw x;
+        }
+      });
+      scope.fork(() -> {
+        started.await();
+        throw failure;
+      });
+      return "ignored";
+    });
+    assertSame(failure, value.getCause().get());
+    // cancelled by the scope, not a failure
+    assertTrue(sibling.get() instanceof InterruptedException);
+    assertEquals(0, failure.getSuppressed().length);
+  }
+
+  @Test
+  public void scopeWaitsForTasksWhenBodyFails() {
+    AtomicInteger finished = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    IllegalStateException failure = new IllegalStateException("intentional err");
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Try.Value<Object> value = Try.scope(executor, scope -> {
+        scope.fork(() -> {
+          started.countDown();
+          try {
+            Thread.sleep(60_000L);
+          } finally {
+            finished.incrementAndGet();
+          }
+          return null;
+        });
+        started.await();
+        throw failure;
+      });
+      assertSame(failure, value.getCause().get());
+      assertEquals(1, finished.get());
+      // pooled threads don't keep the interrupt
+      assertEquals(false, executor.submit(() -> Thread.currentThread().isInterrupted()).get());
+    } catch (Exception x) {
+      throw Throwing.sneakyThrow(x);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void all() {
+    Try.Value<List<String>> value = Try.all(() -> "a", () -> "b", () -> "c");
+    assertEquals(Arrays.asList("a", "b", "c"), value.get());
+  }
+
+  @Test
+  public void allFailsFast() {
+    IOException failure = new IOException("intentional err");
+    long start = System.nanoTime();
+    Try.Value<List<String>> value = Try.all(() -> {
+      Thread.sleep(60_000L);
+      return "slow";
+    }, () -> {
+      throw failure;
+    });
+    assertSame(failure, value.getCause().get());
+    assertTrue(System.nanoTime() - start < 30_000_000_000L);
+  }
+
+  @Test
+  public void anyReturnsFirstSuccess() {
+    Try.Value<String> value = Try.any(() -> {
+      throw new IOException("intentional err");
+    }, () -> {
+      Thread.sleep(60_000L);
+      return "slow";
+    }, () -> "fast");
+    assertEquals("fast", value.get());
+  }
+
+  @Test
+  public void anyFailsWhenEveryTaskFails() {
+    Try.Value<String> value = Try.any(() -> {
+      throw new IOException("intentional err");
+    }, () -> {
+      throw new IllegalStateException("intentional err");
+    });
+    Throwable x = value.getCause().get();
+    assertTrue(x instanceof CompletionException);
+    assertEquals(1, x.getSuppressed().length);
+    assertTrue(x.getCause() instanceof IOException
+        || x.getCause() instanceof IllegalStateException);
+    assertEquals(0, x.getCause().getSuppressed().length);
+  }
+
+  @Test
+  public void sharedFailureIsLeftUntouched() {
+    IOException shared = new IOException("intentional err");
+    for (int i = 0; i < 5; i++) {
+      assertEquals("fast", Try.any(() -> {
+        throw shared;
+      }, () -> {
+        Thread.sleep(60_000L);
+        return "slow";
+      }, () -> "fast").get());
+      assertSame(shared, Try.race(() -> {
+        Thread.sleep(60_000L);
+        return "slow";
+      }, () -> {
+        throw shared;
+      }).getCause().get());
+    }
+    assertEquals(0, shared.getSuppressed().length);
+
+    IllegalStateException other = new IllegalStateException("intentional err");
+    Throwable x = Try.any(() -> {
+      throw shared;
+    }, () -> {
+      throw shared;
+    }, () -> {
+      throw other;
+    }).getCause().get();
+    assertTrue(x instanceof CompletionException);
+    assertEquals(1, x.getSuppressed().length);
+    assertEquals(0, shared.getSuppressed().length);
+    assertEquals(0, other.getSuppressed().length);
+  }
+
+  @Test
+  public void allLeavesSharedFailureUntouched() {
+    IOException shared = new IOException("intentional err");
+    for (int i = 0; i < 5; i++) {
+      Try.Value<List<String>> value = Try.all(() -> {
+        Thread.sleep(50L);
+        throw shared;
+      }, () -> {
+        Thread.sleep(60_000L);
+        return "slow";
+      });
+      assertSame(shared, value.getCause().get());
+      assertEquals(0, shared.getSuppressed().length);
+    }
+  }
+
+  @Test
+  public void raceReturnsFirstResult() {
+    IOException failure = new IOException("intentional err");
+    Try.Value<String> value = Try.race(() -> {
+      Thread.sleep(60_000L);
+      return "slow";
+    }, () -> {
+      throw failure;
+    });
+    assertSame(failure, value.getCause().get());
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      assertEquals("fast", Try.race(executor, () -> {
+        Thread.sleep(60_000L);
+        return "slow";
+      }, () -> "fast").get());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void raceWithoutTasks() {
+    Try.race();
+  }
 }